@@ -0,0 +1,249 @@
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+
+import users.UserRegistry;
+/**
+ * Protocolo binario con tramas de largo fijo en la cabecera, alternativo al protocolo de lineas de texto.
+ * Cada trama es: 1 byte con el codigo de operacion, 4 bytes (big endian) con el largo del contenido y el contenido.
+ * Los campos del contenido van tipados, uno detras de otro:
+ * <ul>
+ * <li>texto: 2 bytes con el largo en bytes y el texto en UTF-8</li>
+ * <li>entero: 4 bytes</li>
+ * <li>modo: 1 byte</li>
+ * <li>lista: 2 bytes con la cantidad de elementos y luego cada texto</li>
+ * <li>datos: 4 bytes con el largo y los bytes crudos (sin Base64)</li>
+ * </ul>
+ * Campos de cada operacion: 0 (ninguno, o texto prefijo, entero limite y texto cursor para
+ * una pagina; el cursor vacio es la primera), 10 (texto nick, texto nombre, entero edad, lista generos, texto contrasena,
+ * lista amigos), 11 (texto token), 12 (texto nick, texto contrasena), 13 (texto nick, texto cancion, datos),
+ * 17 (texto emisor, texto receptor, texto mensaje), 18 (texto usuario y, para leer una pagina, entero cantidad y
+ * entero desde), 19 (texto usuario), 20 (modo, texto usuario), 22 (modo, texto consulta y, en el modo 5 de
+ * autocompletar, opcionalmente entero limite),
+ * 21 (texto cancion, modo, entero inicio, entero fin), 23 (texto usuario, texto amigo),
+ * 24 (texto usuario y opcionalmente entero limite), 33 (texto cancion).
+ * En el 21 el modo indica si inicio y fin son bytes (0) o milisegundos (1), y un fin de -1 es el final de la
+ * cancion; el 33 envia la cancion completa. Despues de la trama de respuesta de estas dos operaciones el servidor
+ * envia los bytes crudos de la cancion, fuera de cualquier trama (ver Operaciones.reproducir).
+ * El 12 responde &lt;true&gt;token&lt;/true&gt; y deja la sesion asociada a la conexion; 17, 18, 19, 23 y 24
+ * la requieren. El 11 asocia a la conexion una sesion abierta desde otra conexion.
+ * Para subir una cancion por partes: 130 (texto nick, texto cancion) inicia la subida, cada 131 lleva una parte
+ * (todo el contenido de la trama son bytes crudos de la cancion) y 132 (ninguno) la termina.
+ * La respuesta es una trama con el mismo codigo y el texto de la respuesta en UTF-8 como contenido; las
+ * operaciones sin respuesta devuelven una trama vacia, salvo 130 y 131.
+ * El primer byte de una trama nunca es un digito ASCII ni '@' (el prefijo de sesion de las lineas de texto), por
+ * eso el servidor distingue ambos protocolos con solo mirar el primer byte que envia el cliente.
+ * @author Sebastian Alba
+ * @author David Pereira
+ * @author Randall Mendez
+ *
+ */
+public class BinaryProtocol {
+	/**
+	 * Bytes de la cabecera: codigo de operacion y largo del contenido
+	 */
+	public static final int CABECERA = 5;
+	/**
+	 * Largo maximo del contenido de una trama; las canciones mas grandes se suben por partes (130, 131 y 132)
+	 */
+	public static final int MAX_CONTENIDO = 1024 * 1024;
+	/**
+	 * Bytes que se reservan para el contenido al leer la cabecera; el buffer crece a medida que llega el resto, asi
+	 * un cliente que solo envia cabeceras no reserva MAX_CONTENIDO bytes
+	 */
+	public static final int RESERVA_INICIAL = 8 * 1024;
+	/**
+	 * Codigos de la subida de canciones por partes
+	 */
+	public static final int INICIO_SUBIDA = 130;
+	public static final int PARTE_SUBIDA = 131;
+	public static final int FIN_SUBIDA = 132;
+	private static final ThreadLocal<CharsetDecoder> DECODIFICADOR = ThreadLocal.withInitial(() -> StandardCharsets.UTF_8.newDecoder());
+	/**
+	 * Indica si el primer byte que envio el cliente inicia una trama binaria o una linea de texto. Una linea empieza
+	 * con el codigo de operacion o con '@' si trae el token de una sesion.
+	 * @param primero
+	 * @return boolean
+	 */
+	public static boolean esBinario(byte primero) {
+		return (primero < '0' || primero > '9') && primero != '@';
+	}
+	/**
+	 * Lee el largo del contenido de la cabecera, sin mover la posicion del buffer
+	 * @param cabecera , buffer cuya posicion esta al inicio de la trama y tiene al menos CABECERA bytes
+	 * @return largo del contenido
+	 * @throws IllegalArgumentException si el largo es invalido
+	 */
+	public static int largoContenido(ByteBuffer cabecera) {
+		int largo = cabecera.getInt(cabecera.position() + 1);
+		if (largo < 0 || largo > MAX_CONTENIDO) {
+			throw new IllegalArgumentException("Largo de trama invalido: " + largo);
+		}
+		return largo;
+	}
+	/**
+	 * Reserva el buffer para recibir el contenido de una trama
+	 * @param largo , largo del contenido que indica la cabecera
+	 * @return buffer de a lo sumo RESERVA_INICIAL bytes
+	 */
+	public static ByteBuffer reservar(int largo) {
+		return ByteBuffer.allocate(Math.min(largo, RESERVA_INICIAL));
+	}
+	/**
+	 * Si el buffer del contenido ya esta lleno y faltan bytes de la trama, lo cambia por uno del doble, sin pasar
+	 * del largo de la trama
+	 * @param contenido , buffer en modo escritura
+	 * @param largo , largo del contenido que indica la cabecera
+	 * @return el mismo buffer o uno mas grande con los bytes ya recibidos
+	 */
+	public static ByteBuffer crecer(ByteBuffer contenido, int largo) {
+		if (contenido.hasRemaining() || contenido.capacity() >= largo) {
+			return contenido;
+		}
+		ByteBuffer mayor = ByteBuffer.allocate((int) Math.min((long) contenido.capacity() * 2, largo));
+		contenido.flip();
+		return mayor.put(contenido);
+	}
+	/**
+	 * Decodifica los campos de la trama y ejecuta la operacion que corresponde
+	 * @param opcode , codigo de operacion de la cabecera
+	 * @param contenido , buffer con el contenido de la trama, entre position y limit
+	 * @param users , registro de usuarios compartido
+	 * @param estado , estado de la conexion del cliente
+	 * @return la respuesta de la operacion, o null si no tiene
+	 * @throws Exception
+	 */
+	public static String procesar(int opcode, ByteBuffer contenido, UserRegistry users, EstadoCliente estado) throws Exception {
+		switch (opcode) {
+		case 0:
+			if (contenido.hasRemaining()) {
+				String prefijo = leerTexto(contenido);
+				int limite = contenido.getInt();
+				String cursor = leerTexto(contenido);
+				return Operaciones.buscarUsuarios(users, prefijo, limite, cursor.isEmpty() ? null : cursor);
+			}
+			return Operaciones.listarUsuarios(users);
+		case 10:
+			return Operaciones.registrar(users, leerTexto(contenido), leerTexto(contenido), contenido.getInt(),
+					leerLista(contenido), leerTexto(contenido), leerLista(contenido));
+		case 11:
+			return Operaciones.usarSesion(users, estado, leerTexto(contenido));
+		case 12:
+			return Operaciones.iniciarSesion(users, estado, leerTexto(contenido), leerTexto(contenido));
+		case 13:
+			return Operaciones.subirCancion(leerTexto(contenido), leerTexto(contenido), leerDatos(contenido));
+		case 17:
+			String[] message = {leerTexto(contenido), leerTexto(contenido), leerTexto(contenido)};
+			return Operaciones.enviarMensaje(users, estado, message);
+		case 18:
+			String usuario = leerTexto(contenido);
+			if (contenido.hasRemaining()) { //Pagina: desde negativo para los ultimos mensajes
+				return Operaciones.mensajes(users, estado, usuario, contenido.getInt(), contenido.getInt());
+			}
+			return Operaciones.mensajes(users, estado, usuario);
+		case 19:
+			return Operaciones.amigos(users, estado, leerTexto(contenido));
+		case 20:
+			return Operaciones.ordenar(contenido.get(), leerTexto(contenido));
+		case 22:
+			int modo = contenido.get();
+			String consulta = leerTexto(contenido);
+			if (modo == 5 && contenido.hasRemaining()) {
+				return Operaciones.completar(consulta, contenido.getInt());
+			}
+			return Operaciones.buscar(modo, consulta);
+		case 23:
+			String[] friend = {leerTexto(contenido), leerTexto(contenido)};
+			return Operaciones.agregarAmigo(users, estado, friend);
+		case 24:
+			String nick = leerTexto(contenido);
+			return Operaciones.sugerirAmigos(users, estado, nick, contenido.hasRemaining() ? contenido.getInt() : Operaciones.SUGERENCIAS);
+		case 21:
+			String cancion = leerTexto(contenido);
+			String unidad = contenido.get() == 1 ? "t" : "";
+			int inicio = contenido.getInt();
+			int fin = contenido.getInt();
+			return Operaciones.reproducir(estado, cancion, unidad + inicio, fin < 0 ? "" : unidad + fin);
+		case 33:
+			return Operaciones.reproducir(estado, leerTexto(contenido), "", "");
+		case INICIO_SUBIDA:
+			return Operaciones.iniciarSubida(estado, leerTexto(contenido), leerTexto(contenido));
+		case PARTE_SUBIDA:
+			return Operaciones.recibirParte(estado, contenido);
+		case FIN_SUBIDA:
+			return Operaciones.terminarSubida(estado);
+		default:
+			throw new IllegalArgumentException("Codigo de operacion desconocido: " + opcode);
+		}
+	}
+	/**
+	 * Arma la trama de respuesta. Es un buffer en el heap: uno directo por respuesta es lento de reservar y solo se
+	 * libera cuando corre el recolector de basura.
+	 * @param opcode
+	 * @param respuesta , texto de la respuesta, null se envia como contenido vacio
+	 * @return buffer listo para escribir, o null si la operacion no responde (partes de una subida)
+	 */
+	public static ByteBuffer codificar(int opcode, String respuesta) {
+		if (respuesta == null && (opcode == INICIO_SUBIDA || opcode == PARTE_SUBIDA)) {
+			return null;
+		}
+		byte[] bytes = respuesta == null ? new byte[0] : respuesta.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer trama = ByteBuffer.allocate(CABECERA + bytes.length);
+		trama.put((byte) opcode).putInt(bytes.length).put(bytes).flip();
+		return trama;
+	}
+	/**
+	 * Lee un campo de texto directamente del buffer
+	 * @param buf
+	 * @return string
+	 * @throws CharacterCodingException
+	 * @throws IllegalArgumentException si el largo se sale de la trama
+	 */
+	private static String leerTexto(ByteBuffer buf) throws CharacterCodingException {
+		int largo = largoCampo(buf, buf.getShort() & 0xFFFF);
+		int limite = buf.limit();
+		buf.limit(buf.position() + largo);
+		CharBuffer texto = DECODIFICADOR.get().decode(buf); //Avanza la posicion hasta el final del campo
+		buf.limit(limite);
+		return texto.toString();
+	}
+	/**
+	 * Lee un campo de lista de textos
+	 * @param buf
+	 * @return array
+	 * @throws CharacterCodingException
+	 */
+	private static String[] leerLista(ByteBuffer buf) throws CharacterCodingException {
+		String[] lista = new String[buf.getShort() & 0xFFFF];
+		for (int i = 0; i < lista.length; i++) {
+			lista[i] = leerTexto(buf);
+		}
+		return lista;
+	}
+	/**
+	 * Lee un campo de datos crudos
+	 * @param buf
+	 * @return bytes
+	 * @throws IllegalArgumentException si el largo es negativo o se sale de la trama
+	 */
+	private static byte[] leerDatos(ByteBuffer buf) {
+		byte[] datos = new byte[largoCampo(buf, buf.getInt())];
+		buf.get(datos);
+		return datos;
+	}
+	/**
+	 * Valida el largo que envio el cliente para un campo, antes de reservar memoria o leerlo
+	 * @param buf , buffer con la posicion al inicio del campo
+	 * @param largo
+	 * @return el largo
+	 * @throws IllegalArgumentException si es negativo o mayor que lo que queda de la trama
+	 */
+	private static int largoCampo(ByteBuffer buf, int largo) {
+		if (largo < 0 || largo > buf.remaining()) {
+			throw new IllegalArgumentException("Largo de campo invalido: " + largo);
+		}
+		return largo;
+	}
+}
@@ -0,0 +1,119 @@
+import musicLibrary.SongRange;
+import musicLibrary.SongUpload;
+/**
+ * Estado que el servidor guarda de un cliente mientras su conexion sigue abierta, por ejemplo la subida por partes
+ * que tiene en curso, la cancion que se le debe enviar despues de la respuesta o el token de su sesion. Cada conexion tiene el suyo y sus peticiones se atienden de una en una, en orden.
+ * @author Sebastian Alba
+ * @author David Pereira
+ * @author Randall Mendez
+ *
+ */
+public class EstadoCliente {
+	private boolean subiendo;
+	private SongUpload subida;
+	private String rechazo; //Respuesta al terminar una subida que se rechazo al iniciarla
+	private SongRange envio;
+	private String sesion;
+	/**
+	 * Indica si el cliente esta enviando una cancion por partes
+	 * @return boolean
+	 */
+	synchronized boolean isSubiendo() {
+		return subiendo;
+	}
+	/**
+	 * Registra el inicio de una subida por partes
+	 * @param subida , o null si la cancion fue rechazada; en ese caso las partes que lleguen se descartan
+	 */
+	synchronized void iniciarSubida(SongUpload subida) {
+		cancelarSubida();
+		this.subiendo = true;
+		this.subida = subida;
+	}
+	/**
+	 * Registra el inicio de una subida que se rechazo antes de crear el temporal; las partes se descartan y al
+	 * terminar se responde el motivo
+	 * @param rechazo , respuesta para el final de la subida
+	 */
+	synchronized void rechazarSubida(String rechazo) {
+		iniciarSubida(null);
+		this.rechazo = rechazo;
+	}
+	/**
+	 * Obtiene el motivo del rechazo de la subida en curso
+	 * @return la respuesta, o null si no se rechazo con un motivo
+	 */
+	synchronized String getRechazo() {
+		return rechazo;
+	}
+	/**
+	 * Obtiene la subida en curso y la deja de asociar al cliente
+	 * @return la subida, o null si habia sido rechazada
+	 */
+	synchronized SongUpload terminarSubida() {
+		SongUpload actual = this.subida;
+		this.subiendo = false;
+		this.subida = null;
+		this.rechazo = null;
+		return actual;
+	}
+	/**
+	 * Obtiene la subida en curso
+	 * @return la subida, o null si fue rechazada
+	 */
+	synchronized SongUpload getSubida() {
+		return subida;
+	}
+	/**
+	 * Deja pendiente el envio de una cancion; el servidor lo hace justo despues de escribir la respuesta de la
+	 * operacion
+	 * @param envio
+	 */
+	synchronized void setEnvio(SongRange envio) {
+		if (this.envio != null) {
+			this.envio.close();
+		}
+		this.envio = envio;
+	}
+	/**
+	 * Obtiene el envio pendiente y lo deja de asociar al cliente
+	 * @return el rango de la cancion, o null si no hay
+	 */
+	synchronized SongRange tomarEnvio() {
+		SongRange actual = this.envio;
+		this.envio = null;
+		return actual;
+	}
+	/**
+	 * Guarda el token de la sesion con la que el cliente hace sus peticiones
+	 * @param sesion
+	 */
+	synchronized void setSesion(String sesion) {
+		this.sesion = sesion;
+	}
+	/**
+	 * Obtiene el token de la sesion del cliente
+	 * @return el token, o null si no ha iniciado sesion
+	 */
+	synchronized String getSesion() {
+		return sesion;
+	}
+	/**
+	 * Se llama al cerrarse la conexion, descarta lo que haya quedado a medias
+	 */
+	synchronized void cerrar() {
+		cancelarSubida();
+		setEnvio(null);
+	}
+	/**
+	 * Borra la subida que este a medias
+	 */
+	private void cancelarSubida() {
+		if (subida != null) {
+			subida.abort();
+		}
+		this.subiendo = false;
+		this.subida = null;
+		this.rechazo = null;
+	}
+}
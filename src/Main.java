@@ -1,18 +1,11 @@
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.StringReader;
 
-import javax.json.Json;
-import javax.json.JsonArray;
-import javax.json.JsonObject;
-import javax.json.JsonReader;
-import javax.json.JsonValue;
-
+import musicLibrary.ChunkCache;
 import musicLibrary.IndexLibrary;
 import musicLibrary.MusicLibrary;
+import musicLibrary.Streaming;
 import social.Friends;
 import social.Recommendations;
 import treeStructure.AVLTree;
@@ -22,6 +15,7 @@ import treeStructure.BinaryTreeNode;
 import treeStructure.SplayTree;
 import users.ExistingUser;
 import users.NewUser;
+import users.UserRegistry;
 /**
  * Clase principal, donde se inicia ejecucion del servidor.
  * @author Sebastian Alba
@@ -30,18 +24,16 @@ import users.NewUser;
  *
  */
 public class Main {
-	static BinarySearchTree users = new BinarySearchTree();
+	static UserRegistry users;
 	/**
 	 * Metodo que se encarga de iniciar el servidor.
-	 * @param args
+	 * @param args , "nio" para usar el servidor de SelectorSockets en lugar del de Sockets
 	 * @throws Exception para evitar que los sockets se caigan
 	 */
 	public static void main(String args[]) throws Exception {		
 		
-		try {
-			//Carga el archivo JSON en un arbol binario al iniciar el servidor
-			users = loadFileInBST();
-		}catch(NullPointerException ex) {}	
+		//Carga el archivo JSON en el registro una sola vez al iniciar el servidor
+		users = new UserRegistry();
 		
 		NewUser user = new NewUser(users);
 		user.setUserName("davepj07");
@@ -52,11 +44,7 @@ public class Main {
 		user.setPassword("p455w0rd");
 		String[] fds = {"Andres", "Carla", "Jennifer"};
 		user.setFriends(fds);
-		JsonObject toInsert = user.signInUser();
-
-		if(toInsert != null) {
-			users.insertNode(toInsert.toString(), toInsert.getString("UserName"));			
-		}
+		user.signInUser(); //signInUser ya lo agrega al registro
 		
 		NewUser user2 = new NewUser(users);
 		user2.setUserName("sebas84");
@@ -67,10 +55,7 @@ public class Main {
 		user2.setPassword("p455w0rd");
 		String[] fds2 = {"Byron", "Cristian", "Karina"};
 		user2.setFriends(fds2);
-		JsonObject toInsert2 = user2.signInUser();
-		if(toInsert2 != null) {
-			users.insertNode(toInsert2.toString(), toInsert2.getString("UserName"));			
-		}
+		user2.signInUser();
 		
 		NewUser user3 = new NewUser(users);
 		user3.setUserName("hack998");
@@ -81,27 +66,34 @@ public class Main {
 		user3.setPassword("p455w0rd");
 		String[] fds3 = {"Carlos", "sebas84", "Andrea"};
 		user3.setFriends(fds3);
-		JsonObject toInsert3 = user3.signInUser();
-		if(toInsert3 != null) {
-			users.insertNode(toInsert3.toString(), toInsert3.getString("UserName"));			
-		}		
+		user3.signInUser();
 		
 		ExistingUser exUser = new ExistingUser("davepj07", "p455w0rd", users);
 		exUser.logIn();
 		
-		Sockets.conectar(users);
+		IndexLibrary.getInstance(); //Arma los indices de la biblioteca una sola vez, antes de aceptar clientes
+		
+		ChunkCache cache = ChunkCache.getInstance();
+		if(cache.isEnabled()) { //Al cerrar el servidor muestra los aciertos, fallos y desalojos de la cache de canciones
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.println(cache)));
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(Streaming::save)); //Las reproducciones desde la ultima vez que se guardaron
+		
+		if(args.length > 0 && args[0].equalsIgnoreCase("nio")) {
+			SelectorSockets.conectar(users); //Motor NIO: un selector y un pool pequeño de manejadores
+		}else {
+			Sockets.conectar(users);
+		}
 	  /*System.out.println(exUser.getExistingUserNames());
 		
 		Recommendations messages = new Recommendations(users);			  
 		String[] message = {"davepj07","hack998","Esto es solo una prueba"}; 
-		messages.addMessages(message);									  // *** CADA VEZ QUE SE AGREGUE UN MENSAJE ***	
-		messages.setUsersTrees(users = loadFileInBST());				  // *** SE DEBE VOLVER A CARGAR EL ARCHIVO EN EL BST ***
+		messages.addMessages(message);									  // El registro se actualiza en memoria, no hay que volver a cargar el archivo
 		messages.getMessagesList("hack998");
 		
 		String[] friend = {"sebas84", "davepj07"};
 		Friends friends = new Friends(users);
-		String wasAdded = friends.addFriends(friend);				   						  // *** CADA VEZ QUE SE AGREGUE UN AMIGO ***
-		if(wasAdded.equalsIgnoreCase("true")) friends.setUsersTrees(users = loadFileInBST()); // *** SE DEBE VOLVER A CARGAR EL ARCHIVO EN EL BST ***
+		String wasAdded = friends.addFriends(friend);
 		friends.getFriendsList("sebas84");*/
 		
 		MusicLibrary mL = new MusicLibrary();
@@ -119,27 +111,4 @@ public class Main {
 		bTree.print(bTree.getRoot());*/
 		//System.out.println(mL.searchByLyrics("At the mountains"));
 	}
-	/**
-	 * Se encarga de cargar el archivo de registro en el arbol binario de busqueda. Los usuarios que estan en el registro se cargan aca.
-	 * @return arbol binario
-	 */
-	public static BinarySearchTree loadFileInBST() {
-		BinarySearchTree bst = new BinarySearchTree();	
-		try {
-			FileReader fileReader = new FileReader("usuarios.json");
-			if(fileReader.ready()){	
-				InputStream IS = new FileInputStream(new File("usuarios.json"));			
-				JsonReader reader = Json.createReader(IS);			
-				JsonArray oldArray = reader.readArray();			
-				reader.close();			
-				for(JsonValue i:oldArray) {
-					bst.insertNode(i.toString(), i.asJsonObject().getString("UserName"));
-				}
-			}
-			fileReader.close();
-			return bst;
-		}catch(Exception ex) {
-			return bst;
-		}		
-	}
 }
@@ -0,0 +1,403 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import musicLibrary.MusicLibrary;
+import musicLibrary.SongRange;
+import musicLibrary.SongUpload;
+import musicLibrary.Streaming;
+import social.Friends;
+import social.Recommendations;
+import users.ExistingUser;
+import users.NewUser;
+import users.UserRecord;
+import users.UserRegistry;
+/**
+ * Operaciones que el servidor ofrece a los clientes, ya con sus datos separados. Sockets las llama despues de
+ * partir la linea del protocolo de texto y BinaryProtocol despues de leer los campos de una trama binaria, asi
+ * ambos protocolos responden exactamente lo mismo.
+ * @author Sebastian Alba
+ * @author David Pereira
+ * @author Randall Mendez
+ *
+ */
+public class Operaciones {
+	/**
+	 * Respuesta de las operaciones que requieren sesion cuando no hay una valida para el usuario
+	 */
+	static final String SIN_SESION = "<false> Sesion invalida </false>";
+	/**
+	 * Respuesta a una peticion con campos que no se pueden leer (un numero que no es numero, una trama que se acaba
+	 * antes de tiempo, etc.)
+	 */
+	static final String PETICION_INVALIDA = "<false> Peticion invalida </false>";
+	/**
+	 * Respuesta al subir una cancion cuyo nombre, o el del usuario, no se puede usar como nombre de archivo
+	 */
+	static final String NOMBRE_INVALIDO = "<false> Nombre de cancion invalido </false>";
+	/**
+	 * Sugerencias de amigos que se envian si el cliente no indica cuantas quiere
+	 */
+	static final int SUGERENCIAS = 10;
+	/**
+	 * Nombres por pagina al buscar usuarios por prefijo, si el cliente no indica cuantos quiere
+	 */
+	static final int PAGINA_USUARIOS = 20;
+	/**
+	 * Nombres maximos por pagina al buscar usuarios por prefijo
+	 */
+	static final int MAXIMO_USUARIOS = 100;
+	/**
+	 * Sugerencias del autocompletado de la busqueda si el cliente no indica cuantas quiere
+	 */
+	static final int COMPLETAR = 10;
+	/**
+	 * Sugerencias maximas del autocompletado de la busqueda
+	 */
+	static final int MAXIMO_COMPLETAR = 50;
+	/**
+	 * Codigo 0, obtiene los nicknames de los usuarios registrados
+	 * @param users
+	 * @return respuesta
+	 * @throws Exception
+	 */
+	static String listarUsuarios(UserRegistry users) throws Exception {
+		ExistingUser a = new ExistingUser("", "", users);
+		return "<b>" + a.getExistingUserNames() + "</b>";
+	}
+	/**
+	 * Codigo 0 con prefijo, obtiene una pagina de los nicknames que empiezan con el prefijo. Para la pagina
+	 * siguiente se envia como cursor el ultimo nickname recibido.
+	 * @param users
+	 * @param prefijo
+	 * @param limite , cantidad maxima de nicknames (a lo mucho MAXIMO_USUARIOS)
+	 * @param cursor , ultimo nickname de la pagina anterior, o null para la primera
+	 * @return respuesta
+	 */
+	static String buscarUsuarios(UserRegistry users, String prefijo, int limite, String cursor) {
+		ExistingUser a = new ExistingUser("", "", users);
+		return "<b>" + a.getExistingUserNames(prefijo, Math.max(0, Math.min(limite, MAXIMO_USUARIOS)), cursor) + "</b>";
+	}
+	/**
+	 * Codigo 10, registra un nuevo usuario
+	 * @param users
+	 * @param nick
+	 * @param nombre
+	 * @param edad
+	 * @param generos
+	 * @param password
+	 * @param amigos
+	 * @return respuesta
+	 * @throws Exception
+	 */
+	static String registrar(UserRegistry users, String nick, String nombre, int edad, String[] generos, String password, String[] amigos) throws Exception {
+		if (users.exists(nick)) { //Antes de codificar la contraseña y armar el registro
+			return "<false> Apodo utilizado </false>";
+		}
+		NewUser usuario = new NewUser(users);
+		usuario.setUserName(nick);
+		usuario.setName(nombre);
+		usuario.setAge(edad);
+		usuario.setMusicalGenres(generos);
+		usuario.setPassword(password);
+		usuario.setFriends(amigos);
+		UserRecord toInsert = usuario.signInUser();
+		if (toInsert == null) {
+			return "<false> Apodo utilizado </false>";
+		}
+		System.out.println(toInsert.toString());
+		return "<true> Apodo libre </true>";
+	}
+	/**
+	 * Codigo 12, valida el inicio de sesion. Si la contraseña es correcta abre una sesion, la deja asociada a la
+	 * conexion y responde &lt;true&gt;token&lt;/true&gt;; con ese token el cliente puede usar la sesion desde otra
+	 * conexion (ver Sockets.procesar y el codigo 11 de BinaryProtocol).
+	 * @param users
+	 * @param estado , estado de la conexion del cliente
+	 * @param nick
+	 * @param pass
+	 * @return respuesta
+	 * @throws Exception
+	 */
+	static String iniciarSesion(UserRegistry users, EstadoCliente estado, String nick, String pass) throws Exception {
+		ExistingUser user = new ExistingUser(nick, pass, users);
+		if (user.logIn()) {
+			String token = users.getSessions().open(nick);
+			estado.setSesion(token);
+			return "<true>" + token + "</true>";
+		} else {
+			return "<false> Apodo libre </false>";
+		}
+	}
+	/**
+	 * Asocia a la conexion una sesion abierta antes, por ejemplo desde otra conexion
+	 * @param users
+	 * @param estado , estado de la conexion del cliente
+	 * @param token
+	 * @return respuesta
+	 */
+	static String usarSesion(UserRegistry users, EstadoCliente estado, String token) {
+		estado.setSesion(token);
+		if (users.getSessions().validate(token) == null) {
+			return SIN_SESION;
+		}
+		return "<true> Sesion valida </true>";
+	}
+	/**
+	 * Indica si la conexion tiene una sesion valida del usuario
+	 * @param users
+	 * @param estado , estado de la conexion del cliente
+	 * @param userName , usuario en nombre del cual se hace la operacion
+	 * @return boolean
+	 */
+	private static boolean autorizado(UserRegistry users, EstadoCliente estado, String userName) {
+		String usuario = users.getSessions().validate(estado.getSesion());
+		return usuario != null && usuario.equalsIgnoreCase(userName);
+	}
+	/**
+	 * Codigo 13, guarda una cancion enviada por el cliente
+	 * @param nick
+	 * @param cancion
+	 * @param buf , bytes de la cancion
+	 * @return null, esta operacion no responde salvo si el nombre no es valido
+	 * @throws Exception
+	 */
+	static String subirCancion(String nick, String cancion, byte[] buf) throws Exception {
+		MusicLibrary ml = new MusicLibrary();
+		try {
+			ml.storeSong(cancion, buf, nick);
+		} catch (IllegalArgumentException ex) {
+			return NOMBRE_INVALIDO;
+		}
+		return null;
+	}
+	/**
+	 * Inicia la subida por partes de una cancion (codigo 13&gt; en texto, 130 en binario). Si el nombre no es
+	 * valido no se crea el temporal y el final de la subida responde NOMBRE_INVALIDO.
+	 * @param estado , estado de la conexion del cliente
+	 * @param nick
+	 * @param cancion
+	 * @return null, las partes se envian sin esperar respuesta
+	 * @throws Exception
+	 */
+	static String iniciarSubida(EstadoCliente estado, String nick, String cancion) throws Exception {
+		MusicLibrary ml = new MusicLibrary();
+		try {
+			estado.iniciarSubida(ml.beginUpload(cancion, nick));
+		} catch (IllegalArgumentException ex) { //Las partes que sigan se descartan y el error se responde al terminar
+			estado.rechazarSubida(NOMBRE_INVALIDO);
+		}
+		return null;
+	}
+	/**
+	 * Recibe una parte de la cancion que se esta subiendo y la escribe en disco
+	 * @param estado , estado de la conexion del cliente
+	 * @param parte , bytes ya decodificados de la parte
+	 * @return null, las partes no tienen respuesta
+	 * @throws IOException
+	 */
+	static String recibirParte(EstadoCliente estado, ByteBuffer parte) throws IOException {
+		SongUpload subida = estado.getSubida();
+		if (subida != null) { //Si la cancion fue rechazada las partes se descartan
+			subida.write(parte);
+		}
+		return null;
+	}
+	/**
+	 * Termina la subida por partes y guarda la cancion en la biblioteca
+	 * @param estado , estado de la conexion del cliente
+	 * @return respuesta
+	 * @throws Exception
+	 */
+	static String terminarSubida(EstadoCliente estado) throws Exception {
+		String rechazo = estado.getRechazo();
+		SongUpload subida = estado.terminarSubida();
+		if (subida != null && subida.finish()) {
+			return "<true> Cancion guardada </true>";
+		}
+		if (rechazo != null) {
+			return rechazo;
+		}
+		return "<false> La cancion ya se encuentra en la biblioteca </false>";
+	}
+	/**
+	 * Codigo 17, envia un mensaje de recomendacion a otro usuario. El emisor debe tener la sesion iniciada.
+	 * @param users
+	 * @param estado , estado de la conexion del cliente
+	 * @param message ["emisor", "receptor", "mensaje"]
+	 * @return respuesta
+	 * @throws Exception
+	 */
+	static String enviarMensaje(UserRegistry users, EstadoCliente estado, String[] message) throws Exception {
+		if (!autorizado(users, estado, message[0])) {
+			return SIN_SESION;
+		}
+		Recommendations a = new Recommendations(users);
+		a.addMessages(message);
+		return "<true> Se ha enviado el mensaje </true>";
+	}
+	/**
+	 * Codigo 18, obtiene los mensajes del usuario, que debe tener la sesion iniciada
+	 * @param users
+	 * @param estado , estado de la conexion del cliente
+	 * @param userName
+	 * @return respuesta
+	 * @throws Exception
+	 */
+	static String mensajes(UserRegistry users, EstadoCliente estado, String userName) throws Exception {
+		if (!autorizado(users, estado, userName)) {
+			return SIN_SESION;
+		}
+		Recommendations a = new Recommendations(users);
+		return "<true>" + a.getMessagesList(userName) + "</true>";
+	}
+	/**
+	 * Codigo 18 con pagina: obtiene a lo mucho "cantidad" mensajes, cada uno con su id
+	 * @param users
+	 * @param estado , estado de la conexion del cliente
+	 * @param userName
+	 * @param cantidad
+	 * @param desde , id del ultimo mensaje ya leido, o negativo para obtener los ultimos
+	 * @return respuesta &lt;true&gt;id/emisor/mensaje/...&lt;/true&gt;
+	 * @throws Exception
+	 */
+	static String mensajes(UserRegistry users, EstadoCliente estado, String userName, int cantidad, long desde) throws Exception {
+		if (!autorizado(users, estado, userName)) {
+			return SIN_SESION;
+		}
+		Recommendations a = new Recommendations(users);
+		return "<true>" + a.getMessagesList(userName, cantidad, desde) + "</true>";
+	}
+	/**
+	 * Codigo 19, obtiene la lista de amigos del usuario, que debe tener la sesion iniciada
+	 * @param users
+	 * @param estado , estado de la conexion del cliente
+	 * @param userName
+	 * @return respuesta
+	 * @throws Exception
+	 */
+	static String amigos(UserRegistry users, EstadoCliente estado, String userName) throws Exception {
+		if (!autorizado(users, estado, userName)) {
+			return SIN_SESION;
+		}
+		Friends a = new Friends(users);
+		return "<true>" + a.getFriendsList(userName) + "</true>";
+	}
+	/**
+	 * Codigo 24, sugiere amigos de los amigos del usuario, que debe tener la sesion iniciada
+	 * @param users
+	 * @param estado , estado de la conexion del cliente
+	 * @param userName
+	 * @param limite , cantidad maxima de sugerencias
+	 * @return respuesta
+	 */
+	static String sugerirAmigos(UserRegistry users, EstadoCliente estado, String userName, int limite) {
+		if (!autorizado(users, estado, userName)) {
+			return SIN_SESION;
+		}
+		Friends a = new Friends(users);
+		return "<true>" + a.getSuggestions(userName, limite) + "</true>";
+	}
+	/**
+	 * Codigo 20, ordena la biblioteca del usuario
+	 * @param modo , 1 por titulo, 2 por artista, 3 por album
+	 * @param userName
+	 * @return respuesta
+	 * @throws Exception
+	 */
+	static String ordenar(int modo, String userName) throws Exception {
+		MusicLibrary ml = new MusicLibrary();
+		String xml = "";
+		if (modo == 1) {
+			xml = "<true>" + ml.sortLibraryByTitle(userName) + "</true>";
+		}
+		if (modo == 2) {
+			xml = "<true>" + ml.sortLibraryByArtist(userName) + "</true>";
+		}
+		if (modo == 3) {
+			xml = "<true>" + ml.sortLibraryByAlbum(userName) + "</true>";
+		}
+		System.out.println(xml);
+		return xml;
+	}
+	/**
+	 * Codigo 22, busca canciones en la biblioteca
+	 * @param modo , 1 por titulo, 2 por artista, 3 por album, 4 por letra, 5 autocompletar (ver completar)
+	 * @param consulta
+	 * @return respuesta
+	 * @throws Exception
+	 */
+	static String buscar(int modo, String consulta) throws Exception {
+		MusicLibrary ml = new MusicLibrary();
+		String xml = "";
+		if (modo == 1) {
+			System.out.println("nombre");
+			xml = "<true>" + ml.searchByTitle(consulta) + "</true>";
+		}
+		if (modo == 2) {
+			System.out.println("artista");
+			xml = "<true>" + ml.searchByArtist(consulta) + "</true>";
+		}
+		if (modo == 3) {
+			System.out.println("album");
+			xml = "<true>" + ml.searchByAlbum(consulta) + "</true>";
+		}
+		if (modo == 4) {
+			System.out.println("letra");
+			xml = "<true>" + ml.searchByLyrics(consulta) + "</true>";
+		}
+		if (modo == 5) {
+			return completar(consulta, COMPLETAR);
+		}
+		System.out.println(xml);
+		return xml;
+	}
+	/**
+	 * Codigo 22 modo 5, sugiere titulos, artistas y albumes que empiezan con el prefijo, de los mas a los menos
+	 * escuchados. Es para consultar con cada tecla, por eso solo lee los indices compartidos.
+	 * @param prefijo
+	 * @param limite , cantidad maxima de sugerencias (a lo mucho MAXIMO_COMPLETAR)
+	 * @return respuesta
+	 * @throws Exception
+	 */
+	static String completar(String prefijo, int limite) throws Exception {
+		MusicLibrary ml = new MusicLibrary();
+		return "<true>" + ml.autocomplete(prefijo, Math.max(0, Math.min(limite, MAXIMO_COMPLETAR))) + "</true>";
+	}
+	/**
+	 * Codigo 23, agrega un amigo a la lista del usuario, que debe tener la sesion iniciada
+	 * @param users
+	 * @param estado , estado de la conexion del cliente
+	 * @param friend ["usuario", "amigo"]
+	 * @return respuesta
+	 * @throws Exception
+	 */
+	static String agregarAmigo(UserRegistry users, EstadoCliente estado, String[] friend) throws Exception {
+		if (!autorizado(users, estado, friend[0])) {
+			return SIN_SESION;
+		}
+		Friends a = new Friends(users);
+		String validador = a.addFriends(friend);
+		return "<" + validador + "> Se ha enviado el mensaje </" + validador + ">";
+	}
+	/**
+	 * Codigos 21 y 33, prepara el envio de una cancion para reproducirla. La respuesta es una linea
+	 * &lt;true&gt;inicio/largo/total&lt;/true&gt; y justo despues el servidor envia exactamente "largo" bytes crudos
+	 * de la cancion, a partir del byte "inicio". Los bytes se pasan del archivo al socket con transferTo, sin
+	 * cargar la cancion en memoria, y para adelantar solo se envia el rango pedido.
+	 * @param estado , estado de la conexion del cliente, donde queda el envio pendiente
+	 * @param cancion
+	 * @param inicio , byte inicial, o milisegundos si empieza con "t"; vacio es el inicio de la cancion
+	 * @param fin , byte final (no se incluye), o milisegundos si empieza con "t"; vacio es el final de la cancion
+	 * @return respuesta
+	 * @throws Exception
+	 */
+	static String reproducir(EstadoCliente estado, String cancion, String inicio, String fin) throws Exception {
+		Streaming streaming = new Streaming();
+		SongRange rango = streaming.openRange(cancion, inicio, fin);
+		if (rango == null) {
+			return "<false> La cancion no existe </false>";
+		}
+		estado.setEnvio(rango);
+		return "<true>" + rango.getStart() + "/" + rango.getLength() + "/" + rango.getTotal() + "</true>";
+	}
+}
@@ -0,0 +1,423 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import musicLibrary.SongRange;
+import users.UserRegistry;
+/**
+ * Segundo motor del servidor, basado en un Selector de NIO. Un solo hilo acepta, lee y escribe en todos los
+ * clientes sin bloquearse, y las operaciones se ejecutan en un pool pequeño de manejadores. Habla el mismo
+ * protocolo de lineas que Sockets (codigo de operacion seguido de los datos), por lo que los clientes no cambian,
+ * y tambien acepta las tramas de BinaryProtocol.
+ * Un cliente inactivo solo ocupa su SocketChannel, sin hilo ni buffers propios.
+ * @author Sebastian Alba
+ * @author David Pereira
+ * @author Randall Mendez
+ *
+ */
+public class SelectorSockets {
+	/**
+	 * Cantidad de hilos que ejecutan las operaciones, se puede cambiar con -Dodyssey.manejadores
+	 */
+	public static final int MANEJADORES = 4;
+	/**
+	 * Peticiones que un cliente puede tener en cola sin haber leido las respuestas; al llegar a este numero se deja
+	 * de leer de ese cliente hasta que se desocupe
+	 */
+	public static final int MAX_EN_COLA = 16;
+	/**
+	 * Largo maximo de una linea del protocolo de texto: el mismo contenido que una trama, BinaryProtocol.MAX_CONTENIDO
+	 * bytes, en Base64 (codigo 13 o una parte de una subida) y lo demas de la peticion. Si un cliente lo pasa sin
+	 * enviar el salto de linea se cierra la conexion.
+	 */
+	public static final int MAX_LINEA = BinaryProtocol.MAX_CONTENIDO / 3 * 4 + 4 * 1024;
+	private static final int TAMANO_LECTURA = 64 * 1024;
+	private static final long REVISION_INACTIVOS = 5 * 1000;
+	private static final Charset CODIFICACION = Charset.defaultCharset(); //Igual que el Scanner y PrintWriter de Sockets
+	private static final byte[] FIN_LINEA = System.lineSeparator().getBytes(CODIFICACION);
+	/**
+	 * Inicia el servidor NIO en el puerto de siempre.
+	 * @param users , registro de usuarios compartido
+	 * @throws IOException
+	 */
+	public static void conectar(UserRegistry users) throws IOException {
+		conectar(users, Sockets.PUERTO, Integer.getInteger("odyssey.manejadores", MANEJADORES));
+	}
+	/**
+	 * Ciclo principal del selector: acepta clientes, arma las peticiones que llegan, las entrega al pool de
+	 * manejadores y escribe las respuestas cuando estan listas. Las conexiones se mantienen abiertas y el cliente
+	 * puede enviar varias peticiones seguidas sin esperar respuesta: de cada conexion se ejecuta una peticion a la
+	 * vez, asi las respuestas salen en el orden en que llegaron las peticiones.
+	 * @param users , registro de usuarios compartido
+	 * @param puerto
+	 * @param manejadores , cantidad de hilos del pool que ejecuta las operaciones
+	 * @throws IOException
+	 */
+	public static void conectar(UserRegistry users, int puerto, int manejadores) throws IOException {
+		Selector selector = Selector.open();
+		ServerSocketChannel servidor = ServerSocketChannel.open();
+		servidor.bind(new InetSocketAddress(puerto));
+		servidor.configureBlocking(false);
+		servidor.register(selector, SelectionKey.OP_ACCEPT);
+
+		ExecutorService pool = Executors.newFixedThreadPool(manejadores);
+		ConcurrentLinkedQueue<Conexion> respondidas = new ConcurrentLinkedQueue<Conexion>(); //Conexiones cuya peticion en curso ya termino
+		ByteBuffer lectura = ByteBuffer.allocateDirect(TAMANO_LECTURA); //Solo el hilo del selector lee, asi que se comparte
+		long ultimaRevision = System.currentTimeMillis();
+		System.out.println("Listo (NIO)");
+		while (true) {
+			selector.select(REVISION_INACTIVOS);
+
+			Conexion lista;
+			while ((lista = respondidas.poll()) != null) {
+				if (!lista.key.isValid()) {
+					lista.descartar();
+					continue;
+				}
+				lista.terminada();
+				lista.despachar(pool, users, respondidas);
+				lista.actualizarInteres();
+			}
+
+			Iterator<SelectionKey> llaves = selector.selectedKeys().iterator();
+			while (llaves.hasNext()) {
+				SelectionKey key = llaves.next();
+				llaves.remove();
+				try {
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						SocketChannel cliente = servidor.accept();
+						if (cliente != null) {
+							cliente.configureBlocking(false);
+							SelectionKey llave = cliente.register(selector, SelectionKey.OP_READ);
+							llave.attach(new Conexion(llave));
+						}
+						continue;
+					}
+					Conexion conexion = (Conexion) key.attachment();
+					if (key.isReadable()) {
+						lectura.clear();
+						int leidos = ((SocketChannel) key.channel()).read(lectura);
+						if (leidos < 0) {
+							conexion.finEntrada = true; //El cliente ya no envia mas, pero aun puede esperar respuestas
+						} else {
+							lectura.flip();
+							conexion.agregar(lectura);
+							conexion.despachar(pool, users, respondidas);
+						}
+					}
+					if (key.isValid() && key.isWritable()) {
+						conexion.escribir();
+					}
+					conexion.actualizarInteres();
+				} catch (IOException | RuntimeException ex) { //Por ejemplo una trama con un largo invalido; solo se cierra esta conexion
+					cerrar(key);
+				}
+			}
+
+			long ahora = System.currentTimeMillis();
+			if (ahora - ultimaRevision >= REVISION_INACTIVOS) { //Cierra las conexiones que pasaron mucho tiempo sin usarse
+				ultimaRevision = ahora;
+				for (SelectionKey key : selector.keys()) {
+					Object adjunto = key.attachment();
+					if (adjunto instanceof Conexion && ((Conexion) adjunto).inactiva(ahora)) {
+						cerrar(key);
+					}
+				}
+			}
+		}
+	}
+	/**
+	 * Cierra el canal del cliente y lo saca del selector
+	 * @param key
+	 */
+	private static void cerrar(SelectionKey key) {
+		if (key.attachment() instanceof Conexion) {
+			((Conexion) key.attachment()).descartar(); //Descarta una subida por partes o un envio que haya quedado a medias
+		}
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException ex) {}
+	}
+	/**
+	 * Peticion completa lista para ejecutarse, en cualquiera de los dos protocolos
+	 */
+	private static class Peticion {
+		private final String linea;
+		private final int opcode;
+		private final ByteBuffer contenido;
+
+		private Peticion(String linea, int opcode, ByteBuffer contenido) {
+			this.linea = linea;
+			this.opcode = opcode;
+			this.contenido = contenido;
+		}
+	}
+	/**
+	 * Estado de un cliente conectado al selector: el protocolo que usa, la peticion que aun no termina de llegar,
+	 * las peticiones en cola y las respuestas pendientes de escribir. La salida guarda buffers y rangos de canciones
+	 * (SongRange), que se escriben con transferTo del archivo al canal. Solo el hilo del selector la modifica; los
+	 * manejadores unicamente dejan la respuesta en resultado y la cancion a enviar en envio.
+	 */
+	private static class Conexion {
+		private final SelectionKey key;
+		private Boolean binario; //Se decide con el primer byte que llega
+		private byte[] pendiente; //Solo existe mientras hay una linea incompleta
+		private int largo;
+		private ByteBuffer cabecera;
+		private int opcode;
+		private int largoTrama;
+		private ByteBuffer contenido;
+		private final ArrayDeque<Peticion> peticiones = new ArrayDeque<Peticion>();
+		private final ArrayDeque<Object> salida = new ArrayDeque<Object>();
+		private boolean enProceso;
+		private boolean finEntrada;
+		private volatile ByteBuffer resultado;
+		private volatile SongRange envio;
+		private volatile boolean fallo;
+		private long ultimoUso = System.currentTimeMillis();
+		private final EstadoCliente estado = new EstadoCliente();
+
+		private Conexion(SelectionKey key) {
+			this.key = key;
+		}
+		/**
+		 * Agrega los bytes leidos a la peticion en construccion; cada peticion que se completa pasa a la cola
+		 * @param datos
+		 */
+		private void agregar(ByteBuffer datos) {
+			ultimoUso = System.currentTimeMillis();
+			while (datos.hasRemaining()) {
+				if (binario == null) {
+					binario = BinaryProtocol.esBinario(datos.get(datos.position()));
+				}
+				Peticion peticion = binario ? agregarTrama(datos) : agregarLinea(datos);
+				if (peticion != null) {
+					peticiones.add(peticion);
+				}
+			}
+		}
+		/**
+		 * Arma una linea del protocolo de texto
+		 * @param datos
+		 * @return la peticion si ya llego el salto de linea, o null
+		 * @throws IllegalArgumentException si la linea pasa de MAX_LINEA bytes
+		 */
+		private Peticion agregarLinea(ByteBuffer datos) {
+			while (datos.hasRemaining()) {
+				byte b = datos.get();
+				if (b == '\n') {
+					int fin = largo;
+					if (fin > 0 && pendiente[fin - 1] == '\r') {
+						fin--;
+					}
+					String linea = new String(pendiente == null ? new byte[0] : pendiente, 0, fin, CODIFICACION);
+					pendiente = null;
+					largo = 0;
+					return new Peticion(linea, 0, null);
+				}
+				if (pendiente == null) {
+					pendiente = new byte[256];
+				} else if (largo == pendiente.length) {
+					if (largo >= MAX_LINEA) {
+						throw new IllegalArgumentException("Linea demasiado larga");
+					}
+					pendiente = Arrays.copyOf(pendiente, (int) Math.min((long) largo * 2, MAX_LINEA));
+				}
+				pendiente[largo++] = b;
+			}
+			return null;
+		}
+		/**
+		 * Arma una trama del protocolo binario: primero la cabecera y luego el contenido, cuyo buffer crece a medida
+		 * que llegan los bytes hasta el largo que indica la cabecera
+		 * @param datos
+		 * @return la peticion si ya llego la trama completa, o null
+		 */
+		private Peticion agregarTrama(ByteBuffer datos) {
+			if (contenido == null) {
+				if (cabecera == null) {
+					cabecera = ByteBuffer.allocate(BinaryProtocol.CABECERA);
+				}
+				while (cabecera.hasRemaining() && datos.hasRemaining()) {
+					cabecera.put(datos.get());
+				}
+				if (cabecera.hasRemaining()) {
+					return null;
+				}
+				cabecera.flip();
+				opcode = cabecera.get(0) & 0xFF;
+				largoTrama = BinaryProtocol.largoContenido(cabecera);
+				contenido = BinaryProtocol.reservar(largoTrama);
+				cabecera = null;
+			}
+			while (contenido.position() < largoTrama && datos.hasRemaining()) {
+				contenido = BinaryProtocol.crecer(contenido, largoTrama);
+				int cantidad = Math.min(contenido.remaining(), datos.remaining());
+				ByteBuffer parte = datos.duplicate();
+				parte.limit(parte.position() + cantidad);
+				contenido.put(parte);
+				datos.position(datos.position() + cantidad);
+			}
+			if (contenido.position() < largoTrama) {
+				return null;
+			}
+			contenido.flip();
+			Peticion peticion = new Peticion(null, opcode, contenido);
+			contenido = null;
+			return peticion;
+		}
+		/**
+		 * Si no hay otra peticion de esta conexion ejecutandose, entrega la siguiente de la cola al pool
+		 * @param pool
+		 * @param users
+		 * @param respondidas , cola donde el manejador deja la conexion al terminar
+		 */
+		private void despachar(ExecutorService pool, UserRegistry users, ConcurrentLinkedQueue<Conexion> respondidas) {
+			if (enProceso || peticiones.isEmpty()) {
+				return;
+			}
+			Peticion peticion = peticiones.poll();
+			boolean esBinario = binario;
+			enProceso = true;
+			pool.execute(() -> {
+				ByteBuffer respuesta = null;
+				try {
+					String texto;
+					try {
+						texto = esBinario ? BinaryProtocol.procesar(peticion.opcode, peticion.contenido, users, estado) : Sockets.procesar(peticion.linea, users, estado);
+					} catch (RuntimeException ex) { //Campos mal formados: se responde el error y la conexion sigue
+						texto = Operaciones.PETICION_INVALIDA;
+					}
+					respuesta = esBinario ? BinaryProtocol.codificar(peticion.opcode, texto) : codificarLinea(texto);
+				} catch (Exception ex) {
+					ex.printStackTrace();
+					fallo = true;
+				}
+				resultado = respuesta;
+				envio = estado.tomarEnvio();
+				respondidas.add(this);
+				key.selector().wakeup();
+			});
+		}
+		/**
+		 * Pasa la respuesta de la peticion que termino a la cola de salida. Si la operacion fallo se descartan las
+		 * peticiones siguientes y la conexion se cierra despues de enviar las respuestas anteriores, igual que en
+		 * el servidor bloqueante, para que el cliente no quede esperando una respuesta que no va a llegar.
+		 */
+		private void terminada() {
+			enProceso = false;
+			ultimoUso = System.currentTimeMillis();
+			if (resultado != null) {
+				salida.add(resultado);
+				resultado = null;
+			}
+			if (envio != null) {
+				salida.add(envio);
+				envio = null;
+			}
+			if (fallo) {
+				peticiones.clear();
+				finEntrada = true;
+			}
+		}
+		/**
+		 * Escribe todo lo que el canal acepte de las respuestas pendientes, en orden
+		 * @throws IOException
+		 */
+		private void escribir() throws IOException {
+			SocketChannel canal = (SocketChannel) key.channel();
+			while (!salida.isEmpty()) {
+				Object siguiente = salida.peek();
+				if (siguiente instanceof SongRange) {
+					SongRange rango = (SongRange) siguiente;
+					rango.transferTo(canal);
+					if (!rango.isDone()) {
+						return;
+					}
+				} else {
+					ByteBuffer buffer = (ByteBuffer) siguiente;
+					canal.write(buffer);
+					if (buffer.hasRemaining()) {
+						return;
+					}
+				}
+				ultimoUso = System.currentTimeMillis();
+				salida.poll();
+			}
+		}
+		/**
+		 * Libera lo que la conexion tenga a medias al cerrarse: la subida por partes y los envios de canciones
+		 */
+		private void descartar() {
+			estado.cerrar();
+			SongRange pendiente = envio;
+			if (pendiente != null) {
+				pendiente.close();
+			}
+			for (Object item : salida) {
+				if (item instanceof SongRange) {
+					((SongRange) item).close();
+				}
+			}
+			salida.clear();
+		}
+		/**
+		 * Lee mientras la cola tenga espacio y escribe mientras haya respuestas; si el cliente ya cerro su lado y
+		 * no queda nada pendiente, cierra la conexion
+		 */
+		private void actualizarInteres() {
+			if (!key.isValid()) {
+				return;
+			}
+			if (finEntrada && !enProceso && peticiones.isEmpty() && salida.isEmpty()) {
+				cerrar(key);
+				return;
+			}
+			int interes = 0;
+			if (!finEntrada && peticiones.size() < MAX_EN_COLA) {
+				interes |= SelectionKey.OP_READ;
+			}
+			if (!salida.isEmpty()) {
+				interes |= SelectionKey.OP_WRITE;
+			}
+			key.interestOps(interes);
+		}
+		/**
+		 * Indica si la conexion lleva mas de Sockets.TIEMPO_INACTIVO sin actividad y sin nada pendiente
+		 * @param ahora
+		 * @return boolean
+		 */
+		private boolean inactiva(long ahora) {
+			return !enProceso && peticiones.isEmpty() && salida.isEmpty() && ahora - ultimoUso > Sockets.TIEMPO_INACTIVO;
+		}
+		/**
+		 * Codifica una linea de respuesta del protocolo de texto, en el heap como las tramas de BinaryProtocol.codificar
+		 * @param texto , o null si la operacion no responde nada
+		 * @return buffer o null
+		 */
+		private static ByteBuffer codificarLinea(String texto) {
+			if (texto == null) {
+				return null;
+			}
+			byte[] bytes = texto.getBytes(CODIFICACION);
+			ByteBuffer buffer = ByteBuffer.allocate(bytes.length + FIN_LINEA.length);
+			buffer.put(bytes).put(FIN_LINEA).flip();
+			return buffer;
+		}
+	}
+}
@@ -1,19 +1,25 @@
-import java.io.File;
-import java.io.FileInputStream;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Base64;
 import java.util.Scanner;
-import javax.json.JsonObject;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
-import musicLibrary.MusicLibrary;
-import social.Friends;
-import social.Recommendations;
-import users.ExistingUser;
-
-import treeStructure.BinarySearchTree;
-import users.NewUser;
+import musicLibrary.SongRange;
+import users.UserRegistry;
 /**
  * Se encarga de la conexion con el cliente.
  * @author Sebastian Alba
@@ -22,7 +28,18 @@ import users.NewUser;
  *
  */
 public class Sockets {
-	@SuppressWarnings("resource")
+	static final int PUERTO = 3000;
+	/**
+	 * Cantidad maxima de clientes atendidos al mismo tiempo, se puede cambiar con -Dodyssey.maxConexiones
+	 */
+	public static final int MAX_CONEXIONES = 64;
+	/**
+	 * Milisegundos que una conexion puede pasar sin enviar peticiones antes de cerrarse
+	 */
+	public static final int TIEMPO_INACTIVO = 60 * 1000;
+	private static final String INICIO_SUBIDA = "13>";
+	private static final String FIN_SUBIDA = "13<";
+	private static final String SESION = "@"; //Prefijo con el token de la sesion
 	/**
 	 * Se deben crear los sockets correspondientes para cada requerimiento.(Con
 	Randall) con el metodo .conectar, recibe un numero y varios strings, en este caso son máximo 6 parámetros, por nombre dude usuario,
@@ -31,226 +48,356 @@ public class Sockets {
  	este enviado la canción, el archivo al servidor.Obtiene los bytes de un archivo y los convierte en storing de base 64, 
  	luego ese storing lo codifica en UTF8. Y lo envía por treats para que no se congele la app
 	 * Inicia la conexion y cierra la conexion, y llama las operaciones del servidor.
-	 * @param users , es el arbol binario que contiene el registro de los usuarios
+	 * @param users , registro de usuarios compartido
+	 * @throws Exception, para evitar que se caigan lo sockets
+	 */
+	public static void conectar(UserRegistry users) throws Exception {
+		conectar(users, Integer.getInteger("odyssey.maxConexiones", MAX_CONEXIONES));
+	}
+	/**
+	 * Acepta conexiones en el puerto del servidor y entrega cada cliente a un hilo del pool de trabajadores,
+	 * de forma que una peticion lenta (subir una cancion, buscar por letra) no bloquee a las demas. Los clientes se
+	 * aceptan con un ServerSocketChannel bloqueante para que cada socket tenga su canal y las canciones se puedan
+	 * enviar con transferTo.
+	 * @param users , registro de usuarios compartido
+	 * @param maxConexiones , cantidad maxima de clientes que se atienden al mismo tiempo
 	 * @throws Exception, para evitar que se caigan lo sockets
 	 */
-	public static void conectar(BinarySearchTree users) throws Exception {
-		ServerSocket serversocket = new ServerSocket(3000);
+	public static void conectar(UserRegistry users, int maxConexiones) throws Exception {
+		ServerSocketChannel serversocket = ServerSocketChannel.open();
+		serversocket.bind(new InetSocketAddress(PUERTO));
+		ExecutorService trabajadores = Executors.newFixedThreadPool(maxConexiones);
+		Semaphore cupos = new Semaphore(maxConexiones);
 		System.out.println("Listo");
 		while (true) {
-			Socket client = serversocket.accept();
-			Scanner scanner = new Scanner(client.getInputStream());
-			PrintWriter pw = new PrintWriter(client.getOutputStream(), true);
-			String name = scanner.nextLine();
-			if (name.substring(0, 1).equals("0")) {
-				ExistingUser a = new ExistingUser("", "", Main.loadFileInBST());
-				String b = a.getExistingUserNames();
-				String xml = "<b>" + b + "</b>";
-				pw.println(xml);
-			}
-			if (name.substring(0, 2).equals("10")) {
-				if ("hola".equals("hola")) {
-					String xml = "<true> Apodo libre </true>";
-					pw.println(xml);
-					int finick = 0;
-					int finame = 0;
-					int finedad = 0;
-					int fingenero = 0;
-					int fincontra = 0;
-					int j = 4;
-					int x = 0;
-					String[] genero = new String[10];
-					String[] amigo = new String[10];
-					for (int i = 3; name.length() > i; i++) {
-						if (name.substring(i, j).equals("/")) {
-							if (x == 0) {
-								finick = j;
-								x++;
-							} else if (x == 1) {
-								finame = j;
-								x++;
-							} else if (x == 2) {
-								finedad = j;
-								x++;
-							} else if (x == 3) {
-								fingenero = j;
-								x++;
-								int v = finedad + 1;
-								int z = 0;
-								int m = finedad;
-								for (int c = 0; name.substring(finedad, fingenero - 1).length() >= c; c++) {
-									if (name.substring(v - 1, v).equals(",")) {
-										genero[z] = name.substring(m, v - 1);
-										m = c + finedad + 1;
-										z++;
-									}
-									v++;
-								}
-							} else {
-								fincontra = j;
-								x++;
-								int v = fingenero + 1;
-								int z = 0;
-								int m = fincontra;
-								for (int c = 0; name.substring(fingenero, name.length()).length() > c; c++) {
-									if (name.substring(v - 1, v).equals(",")) {
-										amigo[z] = name.substring(m, v - 1);
-										m = c + fingenero + 1;
-										z++;
-									}
-									v++;
-								}
-							}
-						}
-						j++;
-					}
-					NewUser usuario = new NewUser(users);
-					usuario.setUserName(name.substring(2, finick - 1));
-					usuario.setName(name.substring(finick, finame - 1));
-					usuario.setAge(Integer.parseInt(name.substring(finame, finedad - 1)));
-					usuario.setMusicalGenres(genero);
-					usuario.setPassword(name.substring(fingenero, fincontra - 1));
-					usuario.setFriends(amigo);
-					JsonObject toInsert = usuario.signInUser();
-					System.out.println(toInsert.toString());
-				} else {
-					pw.println("<false> Apodo utilizado </false>");
+			cupos.acquire(); // Si ya se atienden maxConexiones clientes, espera a que alguno termine antes de aceptar otro
+			SocketChannel canal = serversocket.accept();
+			Socket client = canal.socket();
+			trabajadores.execute(() -> {
+				try {
+					atender(client, users);
+				} catch (Exception ex) {
+					ex.printStackTrace();
+				} finally {
+					try {
+						client.close();
+					} catch (IOException ex) {}
+					cupos.release();
 				}
+			});
+		}
+	}
+	/**
+	 * Lee las peticiones del cliente, ejecuta la operacion del servidor que corresponde a cada codigo recibido y envia
+	 * las respuestas. La conexion se mantiene abierta para varias peticiones seguidas, hasta que el cliente la cierre
+	 * o pase TIEMPO_INACTIVO sin recibir nada. El cliente puede enviar varias peticiones sin esperar las respuestas;
+	 * como se atienden una por una, las respuestas salen en el mismo orden.
+	 * @param client , socket del cliente que se esta atendiendo
+	 * @param users , registro de usuarios compartido
+	 * @throws Exception
+	 */
+	@SuppressWarnings("resource")
+	private static void atender(Socket client, UserRegistry users) throws Exception {
+		client.setSoTimeout(TIEMPO_INACTIVO);
+		BufferedInputStream entrada = new BufferedInputStream(client.getInputStream());
+		entrada.mark(1);
+		int primero = entrada.read(); //El primer byte indica si el cliente usa tramas binarias o lineas de texto
+		if (primero < 0) {
+			return;
+		}
+		entrada.reset();
+		EstadoCliente estado = new EstadoCliente();
+		WritableByteChannel canal = client.getChannel() != null ? client.getChannel() : Channels.newChannel(client.getOutputStream());
+		try {
+			if (BinaryProtocol.esBinario((byte) primero)) {
+				atenderBinario(entrada, canal, users, estado);
+				return;
 			}
-			if (name.substring(0, 2).equals("12")) {
-				String nick = "";
-				String pass = "";
-				for (int i = 3; name.length() > i; i++) {
-					if (name.substring(i, i + 1).equals("/")) {
-						nick = name.substring(3, i);
-						pass = name.substring(i + 1, name.length());
-					}
+			Scanner scanner = new Scanner(entrada);
+			PrintWriter pw = new PrintWriter(client.getOutputStream(), true);
+			while (scanner.hasNextLine()) { //Termina cuando el cliente cierra la conexion o se agota el tiempo de espera
+				String respuesta;
+				try {
+					respuesta = procesar(scanner.nextLine(), users, estado);
+				} catch (RuntimeException ex) { //Campos mal formados: se responde el error y la conexion sigue
+					respuesta = Operaciones.PETICION_INVALIDA;
 				}
-				ExistingUser user = new ExistingUser(nick, pass, users);
-				boolean validacion = user.logIn();
-				if (validacion) {
-					String xml = "<true> Apodo libre </true>";
-					pw.println(xml);
-				} else {
-					String xml = "<false> Apodo libre </false>";
-					pw.println(xml);
+				if (respuesta != null) {
+					pw.println(respuesta);
 				}
+				enviarCancion(estado, canal);
 			}
-			if (name.substring(0, 2).equals("17")) {
-				String xml = "<true> Se ha enviado el mensaje </true>";
-				pw.println(xml);
-				Recommendations a = new Recommendations(users);
-				String[] message = new String[3];
-				int z = 0;
-				int x = 3;
-				for (int i = 3; name.length() > i; i++) {
-					if (name.substring(i, i + 1).equals("/")) {
-						message[z] = name.substring(x, i);
-						x = i + 1;
-						z++;
+		} finally {
+			estado.cerrar();
+		}
+	}
+	/**
+	 * Atiende a un cliente que usa el protocolo binario: por cada trama lee la cabecera, lee el contenido con el
+	 * largo indicado y responde con otra trama, hasta que el cliente cierre la conexion.
+	 * @param entrada
+	 * @param canal , canal por el que se responde al cliente
+	 * @param users , registro de usuarios compartido
+	 * @param estado , estado de la conexion del cliente
+	 * @throws Exception
+	 */
+	private static void atenderBinario(InputStream entrada, WritableByteChannel canal, UserRegistry users, EstadoCliente estado) throws Exception {
+		DataInputStream datos = new DataInputStream(entrada);
+		ByteBuffer cabecera = ByteBuffer.allocate(BinaryProtocol.CABECERA);
+		try {
+			int opcode;
+			while ((opcode = datos.read()) >= 0) {
+				cabecera.clear();
+				cabecera.put((byte) opcode);
+				datos.readFully(cabecera.array(), 1, BinaryProtocol.CABECERA - 1);
+				int largo = BinaryProtocol.largoContenido(cabecera.rewind());
+				ByteBuffer contenido = BinaryProtocol.reservar(largo);
+				while (contenido.position() < largo) { //Crece solo con los bytes que de verdad llegan
+					contenido = BinaryProtocol.crecer(contenido, largo);
+					int leidos = datos.read(contenido.array(), contenido.position(), contenido.remaining());
+					if (leidos < 0) {
+						throw new EOFException();
 					}
-
+					contenido.position(contenido.position() + leidos);
+				}
+				contenido.flip();
+				String respuesta;
+				try {
+					respuesta = BinaryProtocol.procesar(opcode, contenido, users, estado);
+				} catch (RuntimeException ex) { //Campos mal formados: se responde el error y la conexion sigue
+					respuesta = Operaciones.PETICION_INVALIDA;
 				}
-				message[z] = name.substring(x, name.length());
-				a.addMessages(message);
+				ByteBuffer trama = BinaryProtocol.codificar(opcode, respuesta);
+				while (trama != null && trama.hasRemaining()) {
+					canal.write(trama);
+				}
+				enviarCancion(estado, canal);
+			}
+		} catch (SocketTimeoutException | EOFException ex) {} //El cliente dejo de enviar o cerro a media trama
+	}
+	/**
+	 * Si la ultima operacion dejo una cancion pendiente (codigos 21 y 33), envia el rango pedido directamente del
+	 * archivo al socket
+	 * @param estado , estado de la conexion del cliente
+	 * @param canal
+	 * @throws IOException
+	 */
+	private static void enviarCancion(EstadoCliente estado, WritableByteChannel canal) throws IOException {
+		SongRange envio = estado.tomarEnvio();
+		if (envio == null) {
+			return;
+		}
+		try {
+			while (!envio.isDone()) {
+				envio.transferTo(canal);
 			}
-			if (name.substring(0, 2).equals("18")) {
-				Recommendations a = new Recommendations(users);
-				String xml = "<true>" + a.getMessagesList(name.substring(3, name.length())) + "</true>";
-				pw.println(xml);
+		} finally {
+			envio.close();
+		}
+	}
+	/**
+	 * Ejecuta la operacion del servidor que corresponde al codigo con el que inicia la peticion. Lo usan tanto
+	 * el servidor de sockets bloqueantes como el de SelectorSockets, para que ambos hablen el mismo protocolo.
+	 * Ademas del codigo 13 de siempre, una cancion se puede subir por partes: una linea "13&gt;nick/cancion",
+	 * luego una linea en Base64 por cada parte y al final una linea "13&lt;", que es la unica que recibe respuesta.
+	 * Para reproducir, "21cancion/inicio/fin" envia un rango de la cancion y "33cancion" la cancion completa.
+	 * Los codigos 17, 18, 19, 23 y 24 requieren la sesion del usuario: la que abrio el codigo 12 en la misma conexion,
+	 * o la de un token enviado antes de la peticion como "@token peticion" (queda asociado a la conexion).
+	 * "18/usuario/cantidad" devuelve los ultimos mensajes y "18/usuario/cantidad/desde" los que siguen al id
+	 * "desde"; en ambos casos cada mensaje va como "id/emisor/mensaje/". "24/usuario/limite" sugiere amigos de
+	 * los amigos del usuario (el limite es opcional). "0/" lista todos los usuarios y "0/prefijo/limite/cursor"
+	 * una pagina de los que empiezan con el prefijo (limite y cursor son opcionales). En el codigo 22 el modo 5
+	 * autocompleta: la consulta es "prefijo/limite", con el limite opcional.
+	 * @param name , linea recibida del cliente (codigo de operacion seguido de sus datos)
+	 * @param users , registro de usuarios compartido
+	 * @param estado , estado de la conexion del cliente
+	 * @return la linea que se le debe responder al cliente, o null si la operacion no tiene respuesta
+	 * @throws Exception
+	 */
+	static String procesar(String name, UserRegistry users, EstadoCliente estado) throws Exception {
+		if (estado.isSubiendo()) { //Mientras hay una subida por partes, cada linea es una parte de la cancion en Base64
+			if (name.equals(FIN_SUBIDA)) {
+				return Operaciones.terminarSubida(estado);
 			}
-			if (name.substring(0, 2).equals("19")) {
-				Friends a = new Friends(users);
-				String xml = "<true>" + a.getFriendsList(name.substring(3, name.length())) + "</true>";
-				pw.println(xml);
+			return Operaciones.recibirParte(estado, ByteBuffer.wrap(Base64.getDecoder().decode(name)));
+		}
+		if (name.startsWith(INICIO_SUBIDA)) {
+			int barra = name.indexOf('/', INICIO_SUBIDA.length());
+			return Operaciones.iniciarSubida(estado, name.substring(INICIO_SUBIDA.length(), barra), name.substring(barra + 1));
+		}
+		if (name.startsWith(SESION)) {
+			int espacio = name.indexOf(' ');
+			if (espacio < 0) {
+				return Operaciones.usarSesion(users, estado, name.substring(SESION.length()));
 			}
-			if (name.substring(0, 2).equals("20")) {
-				MusicLibrary ml = new MusicLibrary();
-				String xml = "";
-				if (name.substring(2, 3).equals("1")) {
-					xml = "<true>" + ml.sortLibraryByTitle(name.substring(4)) + "</true>";
-				}
-				if (name.substring(2, 3).equals("2")) {
-					xml = "<true>" + ml.sortLibraryByArtist(name.substring(4)) + "</true>";
-				}
-				if (name.substring(2, 3).equals("3")) {
-					xml = "<true>" + ml.sortLibraryByAlbum(name.substring(4)) + "</true>";
-				}
-				System.out.println(xml);
-				pw.println(xml);
+			estado.setSesion(name.substring(SESION.length(), espacio));
+			name = name.substring(espacio + 1);
+		}
+		String respuesta = null;
+		if (name.substring(0, 1).equals("0")) {
+			String[] campos = name.length() > 2 ? name.substring(2).split("/") : new String[0]; //prefijo[/limite[/cursor]]
+			if (campos.length == 0) {
+				respuesta = Operaciones.listarUsuarios(users);
+			} else {
+				respuesta = Operaciones.buscarUsuarios(users, campos[0], campos.length > 1 ? Integer.parseInt(campos[1]) : Operaciones.PAGINA_USUARIOS,
+						campos.length > 2 ? campos[2] : null);
 			}
-			if (name.substring(0, 2).equals("22")) {
-				MusicLibrary ml = new MusicLibrary();
-				String xml = "";
-				if (name.substring(2, 3).equals("1")) {
-					System.out.println("nombre");
-					xml = "<true>" + ml.searchByTitle(name.substring(4, name.length()-2)) + "</true>";
-				}
-				if (name.substring(2, 3).equals("2")) {
-					System.out.println("artista");
-					xml = "<true>" + ml.searchByArtist(name.substring(4, name.length()-2)) + "</true>";
+		}
+		if (name.substring(0, 2).equals("10")) {
+			int finick = 0;
+			int finame = 0;
+			int finedad = 0;
+			int fingenero = 0;
+			int fincontra = 0;
+			int j = 4;
+			int x = 0;
+			String[] genero = new String[10];
+			String[] amigo = new String[10];
+			for (int i = 3; name.length() > i; i++) {
+				if (name.substring(i, j).equals("/")) {
+					if (x == 0) {
+						finick = j;
+						x++;
+					} else if (x == 1) {
+						finame = j;
+						x++;
+					} else if (x == 2) {
+						finedad = j;
+						x++;
+					} else if (x == 3) {
+						fingenero = j;
+						x++;
+						int v = finedad + 1;
+						int z = 0;
+						int m = finedad;
+						for (int c = 0; name.substring(finedad, fingenero - 1).length() >= c; c++) {
+							if (name.substring(v - 1, v).equals(",")) {
+								genero[z] = name.substring(m, v - 1);
+								m = c + finedad + 1;
+								z++;
+							}
+							v++;
+						}
+					} else {
+						fincontra = j;
+						x++;
+						int v = fingenero + 1;
+						int z = 0;
+						int m = fincontra;
+						for (int c = 0; name.substring(fingenero, name.length()).length() > c; c++) {
+							if (name.substring(v - 1, v).equals(",")) {
+								amigo[z] = name.substring(m, v - 1);
+								m = c + fingenero + 1;
+								z++;
+							}
+							v++;
+						}
+					}
 				}
-				if (name.substring(2, 3).equals("3")) {
-					System.out.println("album");
-					xml = "<true>" + ml.searchByAlbum(name.substring(4, name.length()-2)) + "</true>";
+				j++;
+			}
+			respuesta = Operaciones.registrar(users, name.substring(2, finick - 1), name.substring(finick, finame - 1),
+					Integer.parseInt(name.substring(finame, finedad - 1)), genero, name.substring(fingenero, fincontra - 1), amigo);
+		}
+		if (name.substring(0, 2).equals("12")) {
+			String nick = "";
+			String pass = "";
+			for (int i = 3; name.length() > i; i++) {
+				if (name.substring(i, i + 1).equals("/")) {
+					nick = name.substring(3, i);
+					pass = name.substring(i + 1, name.length());
 				}
-				if (name.substring(2, 3).equals("4")) {
-					System.out.println("letra");
-					xml = "<true>" + ml.searchByLyrics(name.substring(4, name.length()-2)) + "</true>";
+			}
+			respuesta = Operaciones.iniciarSesion(users, estado, nick, pass);
+		}
+		if (name.substring(0, 2).equals("17")) {
+			String[] message = new String[3];
+			int z = 0;
+			int x = 3;
+			for (int i = 3; name.length() > i; i++) {
+				if (name.substring(i, i + 1).equals("/")) {
+					message[z] = name.substring(x, i);
+					x = i + 1;
+					z++;
 				}
-				System.out.println(xml);
-				pw.println(xml);
+
 			}
-			if ((name.substring(0, 2)).equals("23")) {
-				String[] friend = new String[3];
-				int z = 0;
-				int x = 3;
-				for (int i = 3; name.length() > i; i++) {
-					if (name.substring(i, i + 1).equals("/")) {
-						friend[z] = name.substring(x, i);
-						x = i + 1;
-						z++;
-					}
+			message[z] = name.substring(x, name.length());
+			respuesta = Operaciones.enviarMensaje(users, estado, message);
+		}
+		if (name.substring(0, 2).equals("18")) {
+			String[] campos = name.substring(3, name.length()).split("/"); //usuario[/cantidad[/desde]]
+			if (campos.length > 1) {
+				respuesta = Operaciones.mensajes(users, estado, campos[0], Integer.parseInt(campos[1]), campos.length > 2 ? Long.parseLong(campos[2]) : -1);
+			} else {
+				respuesta = Operaciones.mensajes(users, estado, campos[0]);
+			}
+		}
+		if (name.substring(0, 2).equals("19")) {
+			respuesta = Operaciones.amigos(users, estado, name.substring(3, name.length()));
+		}
+		if (name.substring(0, 2).equals("24")) {
+			String[] campos = name.substring(3, name.length()).split("/"); //usuario[/limite]
+			respuesta = Operaciones.sugerirAmigos(users, estado, campos[0], campos.length > 1 ? Integer.parseInt(campos[1]) : Operaciones.SUGERENCIAS);
+		}
+		if (name.substring(0, 2).equals("20")) {
+			respuesta = Operaciones.ordenar(name.charAt(2) - '0', name.substring(4));
+		}
+		if (name.substring(0, 2).equals("22")) {
+			String consulta = name.substring(4, name.length()-2);
+			int barra = consulta.lastIndexOf('/'); //Autocompletar: prefijo[/limite]
+			if (name.charAt(2) == '5' && barra >= 0 && consulta.substring(barra + 1).matches("\\d+")) {
+				respuesta = Operaciones.completar(consulta.substring(0, barra), Integer.parseInt(consulta.substring(barra + 1)));
+			} else {
+				respuesta = Operaciones.buscar(name.charAt(2) - '0', consulta);
+			}
+		}
+		if ((name.substring(0, 2)).equals("23")) {
+			String[] friend = new String[3];
+			int z = 0;
+			int x = 3;
+			for (int i = 3; name.length() > i; i++) {
+				if (name.substring(i, i + 1).equals("/")) {
+					friend[z] = name.substring(x, i);
+					x = i + 1;
+					z++;
 				}
-				friend[z] = name.substring(x, name.length());
-				Friends a = new Friends(users);
-				String validador = a.addFriends(friend);
-				String xml = "<" + validador + "> Se ha enviado el mensaje </" + validador + ">";
-				pw.println(xml);
 			}
-			if ((name.substring(0, 2)).equals("13")) {
-				int u = 0;
-				int p = 0;
-				int g = 0;
-				for (int q = 3; q < name.length(); q++) {
-					if (name.substring(q, q + 1).equals("/")) {
-						if (g == 0) {
-							u = q;
-							g++;
-						} else {
-							p = q;
-							break;
-						}
+			friend[z] = name.substring(x, name.length());
+			respuesta = Operaciones.agregarAmigo(users, estado, friend);
+		}
+		if ((name.substring(0, 2)).equals("13")) {
+			int u = 0;
+			int p = 0;
+			int g = 0;
+			for (int q = 3; q < name.length(); q++) {
+				if (name.substring(q, q + 1).equals("/")) {
+					if (g == 0) {
+						u = q;
+						g++;
+					} else {
+						p = q;
+						break;
 					}
 				}
-				String nick = name.substring(2, u);
-				String cancion = name.substring(u + 1, p);
-				byte[] buf = Base64.getDecoder().decode(name.substring(p + 1, name.length() - 2));
-				MusicLibrary ml = new MusicLibrary();
-				ml.storeSong(cancion, buf, nick);
 			}
-			if((name.substring(0, 2)).equals("33")) {
-				File file = new File("C:\\Users\\mende_000\\Documents\\MusicLibrary\\Principal\\No Love.mp3");
-				FileInputStream files = new FileInputStream(file);
-				byte [] buffer = new byte[files.available()];
-				files.read(buffer);
-				String enco = Base64.getEncoder().encode(buffer).toString();
-				String xml = enco;
-				pw.println(xml);
-				
+			String nick = name.substring(2, u);
+			String cancion = name.substring(u + 1, p);
+			byte[] buf = Base64.getDecoder().decode(name.substring(p + 1, name.length() - 2));
+			respuesta = Operaciones.subirCancion(nick, cancion, buf);
+		}
+		if ((name.substring(0, 2)).equals("21")) {
+			int fin = name.lastIndexOf('/');
+			int inicio = name.lastIndexOf('/', fin - 1);
+			if (inicio < 2) { //Sin rango: "21cancion"
+				respuesta = Operaciones.reproducir(estado, name.substring(2), "", "");
+			} else {
+				respuesta = Operaciones.reproducir(estado, name.substring(2, inicio), name.substring(inicio + 1, fin), name.substring(fin + 1));
 			}
-			client.close();
 		}
+		if ((name.substring(0, 2)).equals("33")) {
+			respuesta = Operaciones.reproducir(estado, name.substring(2), "", "");
+		}
+		return respuesta;
 	}
 }
 // SOCKETS LOS QUE HAY Y LOS FALTANTES
@@ -0,0 +1,273 @@
+package musicLibrary;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+/**
+ * Cache de partes (chunks) de las canciones mas reproducidas, fuera del heap de Java. Toda la memoria se reserva
+ * de una vez en un solo ByteBuffer directo, dividido en espacios de TAMANO_PARTE bytes, asi el tope de memoria
+ * es fijo y no depende del recolector de basura. Cuando no hay espacios libres se reutiliza el de la parte usada
+ * hace mas tiempo (LRU), salvo que se este enviando en ese momento.
+ * El tamaño se cambia con -Dodyssey.cacheMB (0 la desactiva).
+ * @author Sebastian Alba
+ * @author David Pereira
+ * @author Randall Mendez
+ *
+ */
+public class ChunkCache {
+	/**
+	 * Megabytes reservados por defecto
+	 */
+	public static final int MEGAS = 64;
+	/**
+	 * Bytes de cada parte
+	 */
+	public static final int TAMANO_PARTE = 256 * 1024;
+	/**
+	 * Reproducciones que necesita una cancion para que sus partes entren a la cache; las demas se envian
+	 * directo del disco
+	 */
+	public static final int ADMISION = 2;
+	private static ChunkCache instance;
+	private final LinkedHashMap<String, Chunk> chunks = new LinkedHashMap<String, Chunk>(16, 0.75f, true); //En orden de uso
+	private final ArrayDeque<Chunk> free = new ArrayDeque<Chunk>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final long capacity;
+	/**
+	 * Constructor de la clase
+	 * @param capacity , bytes que se reservan fuera del heap
+	 */
+	ChunkCache(long capacity) {
+		int slots = (int) Math.min(Integer.MAX_VALUE / TAMANO_PARTE, capacity / TAMANO_PARTE);
+		this.capacity = (long) slots * TAMANO_PARTE;
+		if(slots > 0) {
+			ByteBuffer memory = ByteBuffer.allocateDirect(slots * TAMANO_PARTE);
+			for(int i = 0; i < slots; i++) {
+				memory.limit((i + 1) * TAMANO_PARTE).position(i * TAMANO_PARTE);
+				free.push(new Chunk(memory.slice()));
+			}
+		}
+	}
+	/**
+	 * Obtiene la cache compartida por todo el servidor
+	 * @return ChunkCache
+	 */
+	public static synchronized ChunkCache getInstance() {
+		if(instance == null) {
+			instance = new ChunkCache(Long.getLong("odyssey.cacheMB", MEGAS) * 1024 * 1024);
+		}
+		return instance;
+	}
+	/**
+	 * Indica si la cache tiene memoria reservada
+	 * @return boolean
+	 */
+	public boolean isEnabled() {
+		return capacity > 0;
+	}
+	/**
+	 * Version del archivo de una cancion: ruta, fecha de modificacion y largo. Cambiar la metadata reescribe el
+	 * archivo en la misma ruta con otras etiquetas y otro relleno, asi que las partes se guardan por version; las de
+	 * una version vieja ya no se piden y salen de la cache como cualquier parte sin usar.
+	 * @param song
+	 * @param length , largo del archivo abierto
+	 * @return String
+	 */
+	static String version(File song, long length) {
+		return song.getPath() + '\u0000' + song.lastModified() + '\u0000' + length;
+	}
+	/**
+	 * Obtiene una parte de la cancion, leyendola del disco si no estaba en la cache. La parte queda reservada
+	 * hasta llamar release, para que no se reutilice su espacio mientras se envia.
+	 * @param version , version del archivo de la cancion (ver version)
+	 * @param channel , archivo abierto de la cancion
+	 * @param number , numero de parte (posicion / TAMANO_PARTE)
+	 * @return la parte, o null si todos los espacios estan reservados o no se pudo leer
+	 * @throws IOException
+	 */
+	Chunk acquire(String version, FileChannel channel, long number) throws IOException {
+		String key = version + "#" + number;
+		Chunk chunk;
+		boolean load = false;
+		synchronized(this) {
+			chunk = chunks.get(key);
+			if(chunk != null) {
+				hits.incrementAndGet();
+			}else {
+				misses.incrementAndGet();
+				chunk = freeChunk();
+				if(chunk == null) {
+					return null;
+				}
+				chunk.reset(key, number * TAMANO_PARTE);
+				chunks.put(key, chunk);
+				load = true;
+			}
+			chunk.pins++;
+		}
+		if(load) {
+			try {
+				chunk.load(channel);
+			}catch(IOException ex) {
+				synchronized(this) {
+					chunks.remove(key);
+				}
+				release(chunk);
+				throw ex;
+			}
+		}else if(!chunk.awaitLoaded()) {
+			release(chunk);
+			return null;
+		}
+		return chunk;
+	}
+	/**
+	 * Libera la reserva de una parte que ya se termino de enviar
+	 * @param chunk
+	 */
+	synchronized void release(Chunk chunk) {
+		chunk.pins--;
+		if(chunk.pins == 0 && chunks.get(chunk.key) != chunk) { //Se saco de la cache mientras estaba reservada
+			chunks.remove(chunk.key, chunk);
+			free.push(chunk);
+		}
+	}
+	/**
+	 * Obtiene un espacio libre, o reutiliza el de la parte sin reservar usada hace mas tiempo
+	 * @return Chunk o null
+	 */
+	private Chunk freeChunk() {
+		if(!free.isEmpty()) {
+			return free.pop();
+		}
+		Iterator<Map.Entry<String, Chunk>> entries = chunks.entrySet().iterator();
+		while(entries.hasNext()) {
+			Chunk eldest = entries.next().getValue();
+			if(eldest.pins == 0) {
+				entries.remove();
+				evictions.incrementAndGet();
+				return eldest;
+			}
+		}
+		return null;
+	}
+	/**
+	 * Bytes reservados fuera del heap
+	 * @return long
+	 */
+	public long getCapacity() {
+		return capacity;
+	}
+	/**
+	 * Resumen con los aciertos, fallos y desalojos desde que inicio el servidor
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		return "ChunkCache[" + (capacity / (1024 * 1024)) + "MB, aciertos=" + hits.get() + ", fallos=" + misses.get() + ", desalojos=" + evictions.get() + "]";
+	}
+	/**
+	 * Espacio de la cache con una parte de una cancion
+	 */
+	static class Chunk {
+		private final ByteBuffer memory;
+		private String key;
+		private long start;
+		private int length;
+		private int pins;
+		private boolean loaded;
+		private boolean failed;
+
+		private Chunk(ByteBuffer memory) {
+			this.memory = memory;
+		}
+		/**
+		 * Prepara el espacio para otra parte
+		 */
+		private synchronized void reset(String key, long start) {
+			this.key = key;
+			this.start = start;
+			this.length = 0;
+			this.loaded = false;
+			this.failed = false;
+		}
+		/**
+		 * Copia la parte del archivo a la memoria del espacio
+		 * @param channel
+		 * @throws IOException
+		 */
+		private void load(FileChannel channel) throws IOException {
+			ByteBuffer destination = memory.duplicate();
+			destination.clear();
+			try {
+				while(destination.hasRemaining()) {
+					if(channel.read(destination, start + destination.position()) < 0) {
+						break;
+					}
+				}
+			}catch(IOException ex) {
+				synchronized(this) {
+					failed = true;
+					notifyAll();
+				}
+				throw ex;
+			}
+			synchronized(this) {
+				length = destination.position();
+				loaded = true;
+				notifyAll();
+			}
+		}
+		/**
+		 * Espera a que otro hilo termine de leer la parte del disco
+		 * @return false si la lectura fallo
+		 */
+		private synchronized boolean awaitLoaded() {
+			boolean interrupted = false;
+			while(!loaded && !failed) {
+				try {
+					wait();
+				}catch(InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+			if(interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			return loaded;
+		}
+		/**
+		 * Posicion de la cancion donde empieza la parte
+		 * @return long
+		 */
+		long getStart() {
+			return start;
+		}
+		/**
+		 * Posicion de la cancion donde termina la parte (no se incluye)
+		 * @return long
+		 */
+		synchronized long getEnd() {
+			return start + length;
+		}
+		/**
+		 * Vista de solo lectura de una porcion de la parte, sin copiar los bytes
+		 * @param from , posicion en la cancion
+		 * @param to , posicion en la cancion (no se incluye)
+		 * @return ByteBuffer
+		 */
+		synchronized ByteBuffer view(long from, long to) {
+			ByteBuffer view = memory.asReadOnlyBuffer();
+			view.limit((int) (Math.min(to, start + length) - start)).position((int) (from - start));
+			return view;
+		}
+	}
+}
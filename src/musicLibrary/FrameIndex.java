@@ -0,0 +1,241 @@
+package musicLibrary;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import com.mpatric.mp3agic.InvalidDataException;
+import com.mpatric.mp3agic.MpegFrame;
+import com.mpatric.mp3agic.Mp3File;
+/**
+ * Indice de los frames de audio de una cancion, para pasar de un tiempo a la posicion en bytes donde empieza el
+ * frame que le corresponde sin recorrer el archivo. Se arma al guardar la cancion en la carpeta principal,
+ * leyendo las cabeceras de los frames, y se guarda al lado de la cancion en un archivo ".idx".
+ * Solo se guarda el inicio de uno de cada PASO frames, asi el indice ocupa poco y una busqueda cae a lo sumo
+ * PASO - 1 frames antes del tiempo pedido. Como cuenta frames reales tambien es exacto con bitrate variable.
+ * @author Sebastian Alba
+ * @author David Pereira
+ * @author Randall Mendez
+ *
+ */
+public class FrameIndex {
+	/**
+	 * Cada cuantos frames se guarda una posicion
+	 */
+	public static final int PASO = 8;
+	private static final int FIRMA = 0x4F494458; //"OIDX"
+	private static final short VERSION = 1;
+	private static final int VENTANA = 64 * 1024; //Bytes de la cancion que se leen a la vez al armar el indice
+	private int sampleRate;
+	private int samplesPerFrame;
+	private int step;
+	private long songLength;
+	private long audioEnd;
+	private int frames;
+	private int[] offsets;
+	/**
+	 * Constructor de la clase, ver build y load
+	 */
+	private FrameIndex() {
+
+	}
+	/**
+	 * Obtiene el indice de la cancion; si no existe o quedo desactualizado (la cancion cambio de tamaño, por
+	 * ejemplo al reescribir sus etiquetas) lo vuelve a armar y lo guarda
+	 * @param song
+	 * @return FrameIndex
+	 * @throws Exception
+	 */
+	public static FrameIndex forSong(File song) throws Exception {
+		FrameIndex index = load(song);
+		if(index == null) {
+			index = build(song);
+			index.save(song);
+		}
+		return index;
+	}
+	/**
+	 * Arma el indice de la cancion y lo guarda al lado de ella
+	 * @param song
+	 * @throws Exception
+	 */
+	public static void create(File song) throws Exception {
+		build(song).save(song);
+	}
+	/**
+	 * Recorre las cabeceras de los frames desde el inicio del audio, saltando de un frame al siguiente con el
+	 * largo que indica cada cabecera. La cancion se lee por ventanas de VENTANA bytes en vez de mapearla: en
+	 * Windows un archivo mapeado queda bloqueado hasta que el recolector de basura libera el mapeo, y no se podria
+	 * borrar ni renombrar justo despues de subirla.
+	 * @param song
+	 * @return FrameIndex
+	 * @throws Exception
+	 */
+	static FrameIndex build(File song) throws Exception {
+		Mp3File mp3 = new Mp3File(song);
+		FrameIndex index = new FrameIndex();
+		index.step = PASO;
+		index.sampleRate = mp3.getSampleRate();
+		int[] offsets = new int[mp3.getFrameCount() / PASO + 1];
+		int count = 0;
+		try(FileChannel channel = FileChannel.open(song.toPath(), StandardOpenOption.READ)) {
+			index.songLength = channel.size();
+			ByteBuffer window = ByteBuffer.allocate(VENTANA);
+			window.flip();
+			long base = 0; //Posicion en la cancion del inicio de la ventana
+			int position = mp3.getStartOffset();
+			int end = (int) Math.min(mp3.getEndOffset() + 1, index.songLength);
+			while(position + 4 <= end) {
+				if(position + 4 > base + window.limit()) { //La cabecera no esta completa en la ventana
+					base = position;
+					window.clear();
+					while(window.hasRemaining() && channel.read(window, base + window.position()) > 0) {
+						//Se lee hasta llenar la ventana o llegar al final
+					}
+					window.flip();
+					if(window.limit() < 4) {
+						break;
+					}
+				}
+				int at = (int) (position - base);
+				MpegFrame frame;
+				try {
+					frame = new MpegFrame(window.get(at), window.get(at + 1), window.get(at + 2), window.get(at + 3));
+				}catch(InvalidDataException ex) { //Basura al final del audio
+					break;
+				}
+				if(index.frames == 0) {
+					index.samplesPerFrame = samplesPerFrame(frame);
+				}
+				if(index.frames % PASO == 0) {
+					if(count == offsets.length) {
+						offsets = Arrays.copyOf(offsets, count * 2);
+					}
+					offsets[count++] = position;
+				}
+				index.frames++;
+				position += frame.getLengthInBytes();
+			}
+			index.audioEnd = Math.min(position, end);
+		}
+		index.offsets = Arrays.copyOf(offsets, count);
+		return index;
+	}
+	/**
+	 * Carga el indice guardado de la cancion
+	 * @param song
+	 * @return el indice, o null si no existe o no corresponde a la version actual de la cancion
+	 */
+	static FrameIndex load(File song) {
+		File file = indexFile(song);
+		if(!file.exists()) {
+			return null;
+		}
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if(in.readInt() != FIRMA || in.readShort() != VERSION) {
+				return null;
+			}
+			FrameIndex index = new FrameIndex();
+			index.sampleRate = in.readInt();
+			index.samplesPerFrame = in.readInt();
+			index.step = in.readInt();
+			index.songLength = in.readLong();
+			index.audioEnd = in.readLong();
+			index.frames = in.readInt();
+			index.offsets = new int[in.readInt()];
+			for(int i = 0; i < index.offsets.length; i++) {
+				index.offsets[i] = in.readInt();
+			}
+			if(index.songLength != song.length()) {
+				return null;
+			}
+			return index;
+		}catch(IOException ex) {
+			return null;
+		}
+	}
+	/**
+	 * Guarda el indice en el archivo ".idx" de la cancion
+	 * @param song
+	 * @throws IOException
+	 */
+	void save(File song) throws IOException {
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile(song))))) {
+			out.writeInt(FIRMA);
+			out.writeShort(VERSION);
+			out.writeInt(sampleRate);
+			out.writeInt(samplesPerFrame);
+			out.writeInt(step);
+			out.writeLong(songLength);
+			out.writeLong(audioEnd);
+			out.writeInt(frames);
+			out.writeInt(offsets.length);
+			for(int offset : offsets) {
+				out.writeInt(offset);
+			}
+		}
+	}
+	/**
+	 * Obtiene la posicion en bytes del frame donde se debe empezar a enviar para reproducir desde un tiempo
+	 * @param millis
+	 * @return long
+	 */
+	public long byteAt(long millis) {
+		if(offsets.length == 0 || samplesPerFrame == 0) {
+			return audioEnd;
+		}
+		if(millis <= 0) {
+			return offsets[0];
+		}
+		long frame = millis * sampleRate / (1000L * samplesPerFrame);
+		if(frame >= frames) {
+			return audioEnd;
+		}
+		return offsets[(int) (frame / step)];
+	}
+	/**
+	 * Obtiene la duracion de la cancion en milisegundos
+	 * @return long
+	 */
+	public long getLengthInMilliseconds() {
+		return sampleRate == 0 ? 0 : (long) frames * samplesPerFrame * 1000 / sampleRate;
+	}
+	/**
+	 * Obtiene la cantidad de frames de audio
+	 * @return int
+	 */
+	public int getFrames() {
+		return frames;
+	}
+	/**
+	 * Archivo donde se guarda el indice de la cancion
+	 * @param song
+	 * @return File
+	 */
+	private static File indexFile(File song) {
+		return new File(song.getPath() + ".idx");
+	}
+	/**
+	 * Cantidad de muestras de audio que trae un frame segun su version y capa
+	 * @param frame
+	 * @return int
+	 */
+	private static int samplesPerFrame(MpegFrame frame) {
+		if(MpegFrame.MPEG_LAYER_1.equals(frame.getLayer())) {
+			return 384;
+		}
+		if(MpegFrame.MPEG_LAYER_3.equals(frame.getLayer()) && !MpegFrame.MPEG_VERSION_1_0.equals(frame.getVersion())) {
+			return 576;
+		}
+		return 1152;
+	}
+}
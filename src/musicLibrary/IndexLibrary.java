@@ -2,8 +2,15 @@ package musicLibrary;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileReader;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.json.Json;
 import javax.json.JsonArray;
@@ -12,123 +19,306 @@ import javax.json.JsonReader;
 
 import treeStructure.AVLTree;
 import treeStructure.BTree;
-import treeStructure.BinarySearchTree;
 import treeStructure.SplayTree;
 /**
- * Se encarga de iniciar los indices en los arboles, los indices de la biblioteca.
+ * Se encarga de mantener los indices en los arboles, el de trigramas de los titulos (TrigramIndex) y el indice
+ * invertido de las letras (LyricsIndex), los indices de la biblioteca. Se arman una sola vez, al
+ * iniciar el servidor, con la biblioteca principal, y despues MusicLibrary los actualiza con cada cancion que se
+ * guarda en la biblioteca principal o cambia de metadata; asi una busqueda no vuelve a leer el JSON ni a armar los arboles.
+ * Cada cancion esta una sola vez por titulo (sin distinguir mayusculas). Las busquedas toman el bloqueo de
+ * lectura y los cambios el de escritura, por eso las busquedas no usan operaciones que reacomoden los arboles
+ * (como buscar en el Splay).
  * @author Sebastian Alba
  * @author David Pereira
  * @author Randall Mendez
  *LOS INDEX SON PARA LA BIBLIOTECA MUSICAL, COOPERAN EN LA BUSQUEDA DE CANCIONES
  */
 public class IndexLibrary {
+	/**
+	 * Canciones maximas que devuelve una busqueda por letra
+	 */
+	public static final int RESULTADOS_LETRA = 20;
+	private static final char SEPARADOR = '\u0000'; //Separa el artista o el album del titulo en las llaves, es menor que cualquier letra
+	private static IndexLibrary instance;
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final HashMap<String, JsonObject> songs = new HashMap<String, JsonObject>(); //Llave: titulo sin mayusculas
 	private BTree titleIndex;
+	private TrigramIndex titleGrams;
 	private AVLTree artistIndex;
 	private SplayTree albumIndex;
-	private BinarySearchTree lyricsIndex;
-	
+	private LyricsIndex lyricsIndex;
+
 	private String home = System.getProperty("user.home"); //Obtiene la ruta principal del sistema (C://user//xxxx//)
 	private String folderPath = home + "\\Documents\\MusicLibrary\\"; //Ruta donde se almacenaran las canciones
 	/**
-	 * Constructor de la clase
+	 * Constructor de la clase, con los indices vacios
 	 */
 	public IndexLibrary() {
 		this.titleIndex = new BTree(16);
+		this.titleGrams = new TrigramIndex();
 		this.artistIndex = new AVLTree();
 		this.albumIndex = new SplayTree();
-		this.lyricsIndex = new BinarySearchTree();
-	}
-	/**
-	 * Crea el arbol B que contiene el indice de los titulos,
-	 * @return
-	 */
-	public BTree createTitleIndex() {
-		try {	
-			FileReader fileReader = new FileReader(folderPath + "Principal\\MusicLibrary.json");
-			if(fileReader.ready()) {
-				InputStream IS = new FileInputStream(new File(folderPath + "Principal\\MusicLibrary.json"));
-				JsonReader reader = Json.createReader(IS);
-				JsonArray array = reader.readArray();
-				reader.close();
-				for (int i = 0; i < array.size(); i++) {
-					JsonObject obj = array.getJsonObject(i);
-					String title = obj.getString("Title");
-					this.titleIndex.insertNode(title);
-				}
+		this.lyricsIndex = new LyricsIndex();
+	}
+	/**
+	 * Obtiene los indices compartidos por todo el servidor, armandolos la primera vez
+	 * @return IndexLibrary
+	 */
+	public static synchronized IndexLibrary getInstance() {
+		if(instance == null) {
+			instance = new IndexLibrary();
+			instance.load();
+		}
+		return instance;
+	}
+	/**
+	 * Arma los indices con las canciones de la biblioteca principal, leyendo el JSON una sola vez
+	 */
+	private void load() {
+		File file = new File(folderPath + "Principal\\MusicLibrary.json");
+		if(!file.exists() || file.length() == 0) {
+			return;
+		}
+		try(InputStream IS = new FileInputStream(file); JsonReader reader = Json.createReader(IS)) {
+			JsonArray array = reader.readArray();
+			for (int i = 0; i < array.size(); i++) {
+				addSong(array.getJsonObject(i));
 			}
-			fileReader.close();
-		}catch(Exception ex) {}
-
-		return this.titleIndex;
-	}
-	/**
-	 * Crea el arbol AVL que contiene el indice de los titulos
-	 * @return
-	 */
-	public AVLTree createArtistIndex() {
-		try {	
-			FileReader fileReader = new FileReader(folderPath + "Principal\\MusicLibrary.json");
-			if(fileReader.ready()) {
-				InputStream IS = new FileInputStream(new File(folderPath + "Principal\\MusicLibrary.json"));
-				JsonReader reader = Json.createReader(IS);
-				JsonArray array = reader.readArray();
-				reader.close();
-				for (int i = 0; i < array.size(); i++) {
-					JsonObject obj = array.getJsonObject(i);
-					String artist = obj.getString("Artist");
-					this.artistIndex.insertNode( obj.toString(), artist+i);
-				}
+		}catch(Exception ex) {
+			System.out.println("No se pudieron armar los indices de la biblioteca: " + ex.getMessage());
+		}
+	}
+	/**
+	 * Agrega una cancion a los indices; si ya hay una con el mismo titulo se reemplaza
+	 * @param song , metadata de la cancion como se guarda en MusicLibrary.json
+	 */
+	public void addSong(JsonObject song) {
+		lock.writeLock().lock();
+		try {
+			String title = song.getString("Title");
+			remove(title);
+			songs.put(title.toLowerCase(Locale.ROOT), song);
+			this.titleIndex.insertNode(title);
+			this.titleGrams.add(title);
+			this.artistIndex.insertNode(title, song.getString("Artist") + SEPARADOR + title); //El valor es el titulo, que es lo que se responde
+			this.albumIndex.insertNode(title, song.getString("Album") + SEPARADOR + title);
+			this.lyricsIndex.add(title, song.getString("Lyrics"));
+		}finally {
+			lock.writeLock().unlock();
+		}
+	}
+	/**
+	 * Quita una cancion de los indices; solo cuando sale de la biblioteca principal, no cuando un usuario la
+	 * borra de la suya
+	 * @param title
+	 */
+	public void removeSong(String title) {
+		lock.writeLock().lock();
+		try {
+			remove(title);
+		}finally {
+			lock.writeLock().unlock();
+		}
+	}
+	/**
+	 * Cambia la metadata de una cancion, que puede haber cambiado de titulo
+	 * @param oldTitle , titulo con el que estaba en los indices
+	 * @param song , metadata nueva
+	 */
+	public void updateSong(String oldTitle, JsonObject song) {
+		lock.writeLock().lock();
+		try {
+			remove(oldTitle);
+			addSong(song); //El bloqueo de escritura se puede tomar de nuevo en el mismo hilo
+		}finally {
+			lock.writeLock().unlock();
+		}
+	}
+	/**
+	 * Quita una cancion de los indices; debe llamarse con el bloqueo de escritura
+	 * @param title
+	 */
+	private void remove(String title) {
+		JsonObject old = songs.remove(title.toLowerCase(Locale.ROOT));
+		if(old == null) {
+			return;
+		}
+		String oldTitle = old.getString("Title");
+		this.titleIndex.deleteKey(oldTitle);
+		this.titleGrams.remove(oldTitle);
+		this.artistIndex.deleteNode(old.getString("Artist") + SEPARADOR + oldTitle);
+		this.albumIndex.deleteNode(old.getString("Album") + SEPARADOR + oldTitle);
+		this.lyricsIndex.remove(oldTitle);
+	}
+	/**
+	 * Busca los titulos que contienen un texto. Los candidatos salen del indice de trigramas; si el texto es muy
+	 * corto para tener trigramas se recorre el arbol B en orden.
+	 * @param title
+	 * @return titulos en orden alfabetico, separados por "/"
+	 */
+	public String searchTitles(String title) {
+		lock.readLock().lock();
+		try {
+			if(title.length() >= TrigramIndex.LARGO) {
+				List<String> found = titleGrams.search(title);
+				found.sort(String.CASE_INSENSITIVE_ORDER); //El mismo orden del arbol B
+				return join(found);
 			}
-			fileReader.close();
-		}catch(Exception ex) {}
-
-		return this.artistIndex;
-	}
-	/**
-	 * Crea el arbol Splay que contiene el indice de los albunes
-	 * @return
-	 */
-	public SplayTree createAlbumIndex() {
-		try {	
-			FileReader fileReader = new FileReader(folderPath + "Principal\\MusicLibrary.json");
-			if(fileReader.ready()) {
-				InputStream IS = new FileInputStream(new File(folderPath + "Principal\\MusicLibrary.json"));
-				JsonReader reader = Json.createReader(IS);
-				JsonArray array = reader.readArray();
-				reader.close();
-				for (int i = 0; i < array.size(); i++) {
-					JsonObject obj = array.getJsonObject(i);
-					String album = obj.getString("Album");
-					this.albumIndex.insertNode(obj.toString(), album+i);
+			String[] array = titleIndex.traverseTree();
+			StringBuilder found = new StringBuilder();
+			for (int i = 0; i < array.length; i++) {
+				if(TrigramIndex.containsIgnoreCase(array[i], title)) {
+					found.append(array[i]).append('/');
 				}
 			}
-			fileReader.close();
-		}catch(Exception ex) {}
-
-		return this.albumIndex;
-	}
-	/**
-	 * Crea el arbol binario que contiene el indice de las letras
-	 * @return
-	 */
-	public BinarySearchTree createLyricsIndex() {
-		try {	
-			FileReader fileReader = new FileReader(folderPath + "davepj07\\MusicLibrary.json");
-			if(fileReader.ready()) {
-				InputStream IS = new FileInputStream(new File(folderPath + "davepj07\\MusicLibrary.json"));
-				JsonReader reader = Json.createReader(IS);
-				JsonArray array = reader.readArray();
-				reader.close();
-				for (int i = 0; i < array.size(); i++) {
-					JsonObject obj = array.getJsonObject(i);
-					String lyric = obj.getString("Lyrics");
-					this.lyricsIndex.insertNode(obj.toString(), lyric);
-				}
+			return found.toString();
+		}finally {
+			lock.readLock().unlock();
+		}
+	}
+	/**
+	 * Busca las canciones de un artista en el arbol AVL. Las llaves son artista y titulo, asi las canciones de un
+	 * artista quedan juntas y se leen con un recorrido de rango.
+	 * @param artist
+	 * @return titulos separados por "/"
+	 */
+	public String searchArtist(String artist) {
+		lock.readLock().lock();
+		try {
+			return join(artistIndex.searchPrefix(artist + SEPARADOR));
+		}finally {
+			lock.readLock().unlock();
+		}
+	}
+	/**
+	 * Busca las canciones de un album en el arbol Splay, con un recorrido de rango como en searchArtist
+	 * @param album
+	 * @return titulos separados por "/"
+	 */
+	public String searchAlbum(String album) {
+		lock.readLock().lock();
+		try {
+			return join(albumIndex.searchPrefix(album + SEPARADOR));
+		}finally {
+			lock.readLock().unlock();
+		}
+	}
+	/**
+	 * Busca las canciones cuya letra tiene todas las palabras de la consulta, con el indice invertido. Primero van
+	 * las que tienen la frase tal como se escribio y despues las demas, cada grupo ordenado por BM25; entre
+	 * comillas solo se buscan las que tienen la frase.
+	 * @param lyrics
+	 * @return hasta RESULTADOS_LETRA titulos, de mejor a peor, separados por "/"
+	 */
+	public String searchLyrics(String lyrics) {
+		lock.readLock().lock();
+		try {
+			return join(lyricsIndex.search(lyrics, RESULTADOS_LETRA));
+		}finally {
+			lock.readLock().unlock();
+		}
+	}
+	/**
+	 * Completa un prefijo con titulos, artistas y albumes, de los mas a los menos escuchados desde que inicio el
+	 * servidor (un artista o un album suma las reproducciones de sus canciones) y por orden alfabetico si empatan.
+	 * Los candidatos salen de recorridos de rango en los tres arboles, sin recorrer toda la biblioteca.
+	 * @param prefix
+	 * @param limit , cantidad maxima de sugerencias
+	 * @return sugerencias separadas por "/"
+	 */
+	public String autocomplete(String prefix, int limit) {
+		HashMap<String, Completion> completions = new HashMap<String, Completion>(); //Llave: texto sin mayusculas
+		lock.readLock().lock();
+		try {
+			HashMap<String, Completion> titles = new HashMap<String, Completion>();
+			for(String title : titleIndex.searchPrefix(prefix)) {
+				complete(completions, titles, title, title);
+			}
+			HashMap<String, Completion> artists = new HashMap<String, Completion>();
+			for(String title : artistIndex.searchPrefix(prefix)) {
+				complete(completions, artists, songs.get(title.toLowerCase(Locale.ROOT)).getString("Artist"), title);
+			}
+			HashMap<String, Completion> albums = new HashMap<String, Completion>();
+			for(String title : albumIndex.searchPrefix(prefix)) {
+				complete(completions, albums, songs.get(title.toLowerCase(Locale.ROOT)).getString("Album"), title);
+			}
+		}finally {
+			lock.readLock().unlock();
+		}
+		PriorityQueue<Completion> best = new PriorityQueue<Completion>(Math.max(1, limit), (a, b) -> Completion.compare(b, a)); //El peor arriba
+		for(Completion completion : completions.values()) {
+			best.add(completion);
+			if(best.size() > limit) {
+				best.poll();
 			}
-			fileReader.close();
-		}catch(Exception ex) {}
+		}
+		List<Completion> ranking = new ArrayList<Completion>(best);
+		Collections.sort(ranking, Completion::compare);
+		StringBuilder found = new StringBuilder();
+		for(Completion completion : ranking) {
+			found.append(completion.text).append('/');
+		}
+		return found.toString();
+	}
+	/**
+	 * Suma las reproducciones de una cancion a una sugerencia. Un mismo texto puede ser titulo, artista y album a
+	 * la vez; se queda con el que tenga mas reproducciones.
+	 * @param completions , sugerencias de todos los tipos
+	 * @param kind , sugerencias del mismo tipo (titulos, artistas o albumes)
+	 * @param text , texto de la sugerencia
+	 * @param title , cancion que la aporta
+	 */
+	private static void complete(Map<String, Completion> completions, Map<String, Completion> kind, String text, String title) {
+		String key = text.toLowerCase(Locale.ROOT);
+		Completion completion = kind.computeIfAbsent(key, k -> new Completion(text));
+		completion.plays += Streaming.getPlays(title);
+		Completion other = completions.get(key);
+		if(other == null || other.plays < completion.plays) {
+			completions.put(key, completion);
+		}
+	}
+	/**
+	 * Sugerencia del autocompletado
+	 */
+	private static class Completion {
+		private final String text;
+		private long plays;
 
-		return lyricsIndex;
+		private Completion(String text) {
+			this.text = text;
+		}
+		/**
+		 * Ordena de mas a menos reproducciones y alfabeticamente si empatan
+		 */
+		private static int compare(Completion a, Completion b) {
+			if(a.plays != b.plays) {
+				return Long.compare(b.plays, a.plays);
+			}
+			return a.text.compareToIgnoreCase(b.text);
+		}
+	}
+	/**
+	 * Cantidad de canciones en los indices
+	 * @return int
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return songs.size();
+		}finally {
+			lock.readLock().unlock();
+		}
+	}
+	/**
+	 * Une una lista de titulos
+	 * @param titles
+	 * @return titulos separados por "/"
+	 */
+	private static String join(List<String> titles) {
+		StringBuilder found = new StringBuilder();
+		for(String title : titles) {
+			found.append(title).append('/');
+		}
+		return found.toString();
 	}
 }
-
@@ -0,0 +1,387 @@
+package musicLibrary;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+/**
+ * Indice invertido y posicional de las letras de las canciones. La letra se divide en palabras (letras y
+ * numeros), sin mayusculas ni tildes, y cada palabra guarda la lista (postings) de las canciones que la tienen, con
+ * las posiciones donde aparece en cada una. Cada cancion recibe un numero al agregarse, siempre mayor que los
+ * anteriores, asi las listas quedan ordenadas y se guardan comprimidas en varints (7 bits por byte): por cada
+ * cancion la diferencia con el numero anterior, cuantas veces aparece la palabra, cuantos bytes miden sus
+ * posiciones (para saltarlas sin leerlas) y las posiciones, cada una como diferencia con la anterior.
+ * Los numeros los lleva SongIds; cuando indica que hay que renumerar se reescriben las listas con los nuevos.
+ * Una consulta recorre las listas de sus palabras a la vez, de la mas corta a la mas larga, y se queda con las
+ * canciones que tienen todas (AND); las frases se comprueban con las posiciones, sin volver a leer la letra. Las
+ * canciones se ordenan por BM25 y solo se guardan las mejores en un heap del tamaño del limite.
+ * No es seguro para varios hilos; IndexLibrary lo usa con su bloqueo.
+ * @author Sebastian Alba
+ * @author David Pereira
+ * @author Randall Mendez
+ *
+ */
+class LyricsIndex {
+	/**
+	 * Saturacion de la frecuencia de una palabra en BM25
+	 */
+	static final double K1 = 1.2;
+	/**
+	 * Cuanto pesa el largo de la letra en BM25 (0 nada, 1 todo)
+	 */
+	static final double B = 0.75;
+	private final HashMap<String, Postings> terms = new HashMap<String, Postings>();
+	private final SongIds ids = new SongIds();
+	private final ArrayList<String[]> songTerms = new ArrayList<String[]>(); //Palabras de cada cancion, para quitarla
+	private int[] lengths = new int[16]; //Palabras de la letra de cada cancion
+	private long totalLength;
+	/**
+	 * Lista comprimida de canciones con las posiciones de la palabra, en orden ascendente
+	 */
+	private static class Postings {
+		private byte[] data = new byte[16];
+		private int length;
+		private int count;
+		private int last = -1;
+		/**
+		 * Agrega una cancion con un numero mayor que todas las de la lista
+		 * @param id
+		 * @param positions , posiciones de la palabra en la letra, en orden
+		 */
+		private void add(int id, int[] positions) {
+			byte[] encoded = new byte[positions.length * 5];
+			int size = 0;
+			int previous = 0;
+			for(int position : positions) {
+				size = write(encoded, size, position - previous);
+				previous = position;
+			}
+			ensure(15 + size);
+			length = write(data, length, id - last);
+			length = write(data, length, positions.length);
+			length = write(data, length, size);
+			System.arraycopy(encoded, 0, data, length, size);
+			length += size;
+			last = id;
+			count++;
+		}
+
+		private void ensure(int extra) {
+			if(length + extra > data.length) {
+				data = Arrays.copyOf(data, Math.max(data.length * 2, length + extra));
+			}
+		}
+	}
+	/**
+	 * Recorre una lista de canciones sin descomprimirla completa
+	 */
+	private static class Cursor {
+		private final Postings postings;
+		private int offset;
+		private int remaining;
+		private int doc = -1;
+		private int frequency;
+		private int positionsAt;
+		private int next = 0; //Donde empieza la siguiente cancion
+
+		private Cursor(Postings postings) {
+			this.postings = postings;
+			this.remaining = postings.count;
+		}
+		/**
+		 * Pasa a la siguiente cancion de la lista
+		 * @return false si ya no hay mas
+		 */
+		private boolean next() {
+			if(remaining == 0) {
+				doc = Integer.MAX_VALUE;
+				return false;
+			}
+			remaining--;
+			offset = next;
+			doc += read();
+			frequency = read();
+			int size = read();
+			positionsAt = offset;
+			next = offset + size;
+			return true;
+		}
+		/**
+		 * Avanza hasta la primera cancion con numero mayor o igual
+		 * @param target
+		 * @return false si ya no hay mas
+		 */
+		private boolean advance(int target) {
+			while(doc < target) {
+				if(!next()) {
+					return false;
+				}
+			}
+			return true;
+		}
+		/**
+		 * Posiciones de la palabra en la cancion actual
+		 * @return arreglo ordenado
+		 */
+		private int[] positions() {
+			int[] positions = new int[frequency];
+			offset = positionsAt;
+			int position = 0;
+			for(int i = 0; i < frequency; i++) {
+				position += read();
+				positions[i] = position;
+			}
+			return positions;
+		}
+
+		private int read() {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = postings.data[offset++];
+				value |= (b & 0x7f) << shift;
+				shift += 7;
+			}while(b < 0);
+			return value;
+		}
+	}
+	/**
+	 * Cancion encontrada, con lo que se usa para ordenarla
+	 */
+	private static class Hit {
+		private final int id;
+		private final boolean phrase;
+		private final double score;
+
+		private Hit(int id, boolean phrase, double score) {
+			this.id = id;
+			this.phrase = phrase;
+			this.score = score;
+		}
+		/**
+		 * Compara de peor a mejor: primero las que tienen la frase, despues por puntaje
+		 */
+		private static int compare(Hit a, Hit b) {
+			if(a.phrase != b.phrase) {
+				return a.phrase ? 1 : -1;
+			}
+			if(a.score != b.score) {
+				return Double.compare(a.score, b.score);
+			}
+			return Integer.compare(b.id, a.id); //Si empatan, primero la que se agrego antes
+		}
+	}
+	/**
+	 * Agrega la letra de una cancion; el titulo no debe estar en el indice
+	 * @param title
+	 * @param lyrics
+	 */
+	void add(String title, String lyrics) {
+		int id = ids.add(title);
+		List<String> words = words(lyrics);
+		LinkedHashMap<String, List<Integer>> positions = new LinkedHashMap<String, List<Integer>>();
+		for(int i = 0; i < words.size(); i++) {
+			positions.computeIfAbsent(words.get(i), w -> new ArrayList<Integer>()).add(i);
+		}
+		songTerms.add(positions.keySet().toArray(new String[0]));
+		if(id == lengths.length) {
+			lengths = Arrays.copyOf(lengths, id * 2);
+		}
+		lengths[id] = words.size();
+		totalLength += words.size();
+		for(Map.Entry<String, List<Integer>> word : positions.entrySet()) {
+			terms.computeIfAbsent(word.getKey(), w -> new Postings()).add(id, toArray(word.getValue()));
+		}
+	}
+	/**
+	 * Quita la letra de una cancion, reescribiendo las listas de sus palabras
+	 * @param title
+	 */
+	void remove(String title) {
+		int id = ids.remove(title);
+		if(id < 0) {
+			return;
+		}
+		for(String word : songTerms.get(id)) {
+			Postings postings = new Postings();
+			Cursor cursor = new Cursor(terms.get(word));
+			while(cursor.next()) {
+				if(cursor.doc != id) {
+					postings.add(cursor.doc, cursor.positions());
+				}
+			}
+			if(postings.count == 0) {
+				terms.remove(word);
+			}else {
+				terms.put(word, postings);
+			}
+		}
+		totalLength -= lengths[id];
+		songTerms.set(id, null);
+		if(ids.isSparse()) {
+			renumber();
+		}
+	}
+	/**
+	 * Renumera las canciones y reescribe las listas, las palabras y los largos con los numeros nuevos
+	 */
+	private void renumber() {
+		int[] renumbered = ids.renumber();
+		for(int id = 0; id < renumbered.length; id++) {
+			if(renumbered[id] >= 0) {
+				songTerms.set(renumbered[id], songTerms.get(id));
+				lengths[renumbered[id]] = lengths[id];
+			}
+		}
+		int count = ids.next();
+		songTerms.subList(count, songTerms.size()).clear();
+		lengths = Arrays.copyOf(lengths, Math.max(16, count * 2));
+		for(Map.Entry<String, Postings> term : terms.entrySet()) {
+			Postings postings = new Postings();
+			Cursor cursor = new Cursor(term.getValue());
+			while(cursor.next()) {
+				postings.add(renumbered[cursor.doc], cursor.positions());
+			}
+			term.setValue(postings);
+		}
+	}
+	/**
+	 * Busca las canciones cuya letra tiene todas las palabras de la consulta. Las que tienen las palabras seguidas,
+	 * como en la consulta, van primero; entre ellas y entre las demas se ordenan por BM25. Si la consulta esta
+	 * entre comillas solo se devuelven las que tienen la frase exacta.
+	 * @param query
+	 * @param limit , cantidad maxima de canciones
+	 * @return titulos, de la mejor a la peor
+	 */
+	List<String> search(String query, int limit) {
+		String text = query.trim();
+		boolean exact = text.length() > 1 && text.startsWith("\"") && text.endsWith("\"");
+		List<String> words = words(text);
+		List<String> found = new ArrayList<String>();
+		if(words.isEmpty() || limit <= 0) {
+			return found;
+		}
+		Set<String> distinct = new LinkedHashSet<String>(words);
+		List<Cursor> cursors = new ArrayList<Cursor>();
+		Map<String, Cursor> byWord = new HashMap<String, Cursor>();
+		for(String word : distinct) {
+			Postings postings = terms.get(word);
+			if(postings == null) {
+				return found;
+			}
+			Cursor cursor = new Cursor(postings);
+			cursors.add(cursor);
+			byWord.put(word, cursor);
+		}
+		cursors.sort((a, b) -> a.postings.count - b.postings.count);
+		int songs = ids.size();
+		double average = songs == 0 ? 1 : Math.max(1, (double) totalLength / songs);
+		double[] idf = new double[cursors.size()];
+		for(int i = 0; i < idf.length; i++) {
+			int df = cursors.get(i).postings.count;
+			idf[i] = Math.log(1 + (songs - df + 0.5) / (df + 0.5));
+		}
+		PriorityQueue<Hit> best = new PriorityQueue<Hit>(limit + 1, Hit::compare);
+		Cursor lead = cursors.get(0);
+		while(lead.next()) {
+			int doc = lead.doc;
+			boolean all = true;
+			for(int i = 1; i < cursors.size() && all; i++) {
+				all = cursors.get(i).advance(doc) && cursors.get(i).doc == doc;
+			}
+			if(!all) {
+				continue;
+			}
+			boolean phrase = words.size() == 1 || hasPhrase(words, byWord);
+			if(exact && !phrase) {
+				continue;
+			}
+			double score = 0;
+			double norm = K1 * (1 - B + B * lengths[doc] / average);
+			for(int i = 0; i < cursors.size(); i++) {
+				int tf = cursors.get(i).frequency;
+				score += idf[i] * tf * (K1 + 1) / (tf + norm);
+			}
+			best.add(new Hit(doc, phrase, score));
+			if(best.size() > limit) {
+				best.poll(); //Se saca la peor, el heap nunca pasa del limite
+			}
+		}
+		while(!best.isEmpty()) {
+			found.add(ids.title(best.poll().id));
+		}
+		Collections.reverse(found);
+		return found;
+	}
+	/**
+	 * Indica si la cancion actual de los cursores tiene las palabras seguidas, en el orden de la consulta
+	 * @param words , palabras de la consulta, con repetidas
+	 * @param byWord , cursores de cada palabra, todos en la misma cancion
+	 * @return boolean
+	 */
+	private static boolean hasPhrase(List<String> words, Map<String, Cursor> byWord) {
+		Map<String, int[]> positions = new HashMap<String, int[]>();
+		for(String word : byWord.keySet()) {
+			positions.put(word, byWord.get(word).positions());
+		}
+		for(int start : positions.get(words.get(0))) {
+			boolean match = true;
+			for(int i = 1; i < words.size() && match; i++) {
+				match = Arrays.binarySearch(positions.get(words.get(i)), start + i) >= 0;
+			}
+			if(match) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static int write(byte[] data, int offset, int value) {
+		while(value >= 0x80) {
+			data[offset++] = (byte) (value | 0x80);
+			value >>>= 7;
+		}
+		data[offset++] = (byte) value;
+		return offset;
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for(int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+	/**
+	 * Divide un texto en palabras sin mayusculas ni tildes
+	 * @param text
+	 * @return palabras, con repetidas y en el orden en que aparecen
+	 */
+	static List<String> words(String text) {
+		String folded = Normalizer.normalize(text, Normalizer.Form.NFD).toLowerCase(Locale.ROOT);
+		List<String> words = new ArrayList<String>();
+		StringBuilder word = new StringBuilder();
+		for(int i = 0; i < folded.length(); i++) {
+			char c = folded.charAt(i);
+			if(Character.isLetterOrDigit(c)) {
+				word.append(c);
+			}else if(Character.getType(c) != Character.NON_SPACING_MARK && word.length() > 0) { //Las tildes sueltas se saltan
+				words.add(word.toString());
+				word.setLength(0);
+			}
+		}
+		if(word.length() > 0) {
+			words.add(word.toString());
+		}
+		return words;
+	}
+}
@@ -5,12 +5,14 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.StringReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Scanner;
 
 import javax.json.Json;
@@ -29,18 +31,18 @@ import com.mpatric.mp3agic.ID3v24Tag;
 import com.mpatric.mp3agic.Mp3File;
 
 import Sorts.Sort;
-import treeStructure.AVLTree;
-import treeStructure.BTree;
-import treeStructure.BinarySearchTree;
-import treeStructure.SplayTree;
 /**
- * Clase encargada de gestionar la biblioteca musical del usuario y general
+ * Clase encargada de gestionar la biblioteca musical del usuario y general.
+ * Cada peticion crea su propia instancia, pero los MusicLibrary.json son compartidos: los cambios que los leen,
+ * arman el arreglo nuevo y lo escriben se hacen con el bloqueo CATALOGO, y cada archivo se escribe en un temporal que
+ * despues reemplaza al anterior, asi quien lo lea nunca ve un archivo a medio escribir.
  * @author Sebastian Alba
  * @author David Pereira
  * @author Randall Mendez
  *
  */
 public class MusicLibrary {
+	private static final Object CATALOGO = new Object(); //Bloqueo de los MusicLibrary.json, compartido por todas las instancias
 	private JsonObjectBuilder objBuilder;
 	private JsonArrayBuilder arrBuilder;
 	private JsonArray finalArray;
@@ -65,20 +67,66 @@ public class MusicLibrary {
 	 * @param songName NOMBRE DE CANCION	
 	 * @param buf     BYTES DE LA CANCION
 	 * @param userName   USUARIO EN SESION
+	 * @throws IllegalArgumentException si el nombre de la cancion o del usuario no es valido (ver inFolder)
 	 * @throws Exception
 	 */
 	public void storeSong(String songName, byte[] buf, String userName) throws Exception{
-		File song = new File(folderPath + "Principal\\" + songName); //Crea el archivo donde se guardara la cancion
-		File userSong = new File(folderPath + userName + "\\" + songName + ".mp3");
+		if(!isValidName(userName)) {
+			throw new IllegalArgumentException("Nombre de usuario invalido");
+		}
+		File song = inFolder(folderPath + "Principal", songName); //Crea el archivo donde se guardara la cancion
+		File userSong = inFolder(folderPath + userName, songName + ".mp3");
+		if(song == null || userSong == null) {
+			throw new IllegalArgumentException("Nombre de cancion invalido");
+		}
 		if(!song.exists()) { //Comprueba si la cancion ya existe en el directorio
 			FileUtils.writeByteArrayToFile(song, buf);
 			Files.copy(song.toPath(), userSong.toPath()); //Copia la cancion en la biblioteca especifica del usuario
 			this.saveMetadata(song, userSong, userName); //Llama al metodo para guardar la metadata de la cancion
+			FrameIndex.create(song); //Despues de la metadata, porque reescribir las etiquetas mueve el audio
 		}else {
 			System.out.println("ERROR: La cancion ya se encuentra en la biblioteca.");
 			return;
 		}		
 	}
+	/**
+	 * Inicia la subida por partes de una cancion. Cada parte se escribe directo al disco conforme llega, asi la
+	 * memoria usada depende del tamaño de la parte y no del tamaño de la cancion.
+	 * @param songName NOMBRE DE CANCION
+	 * @param userName USUARIO EN SESION
+	 * @return la subida en curso, o null si la cancion ya se encuentra en la biblioteca
+	 * @throws IllegalArgumentException si el nombre de la cancion o del usuario no es valido (ver inFolder), antes de
+	 * crear el temporal
+	 * @throws IOException
+	 */
+	public SongUpload beginUpload(String songName, String userName) throws IOException {
+		if(!isValidName(userName)) {
+			throw new IllegalArgumentException("Nombre de usuario invalido");
+		}
+		File song = inFolder(folderPath + "Principal", songName);
+		if(song == null || inFolder(folderPath + userName, songName + ".mp3") == null) {
+			throw new IllegalArgumentException("Nombre de cancion invalido");
+		}
+		if(song.exists()) {
+			System.out.println("ERROR: La cancion ya se encuentra en la biblioteca.");
+			return null;
+		}
+		return new SongUpload(this, song, songName, userName);
+	}
+	/**
+	 * Termina de guardar una cancion que ya se escribio completa en la carpeta principal: la copia a la biblioteca
+	 * del usuario y guarda su metadata
+	 * @param song
+	 * @param songName
+	 * @param userName
+	 * @throws Exception
+	 */
+	void songUploaded(File song, String songName, String userName) throws Exception {
+		File userSong = new File(folderPath + userName + "\\" + songName + ".mp3");
+		Files.copy(song.toPath(), userSong.toPath()); //Copia la cancion en la biblioteca especifica del usuario
+		this.saveMetadata(song, userSong, userName); //Llama al metodo para guardar la metadata de la cancion
+		FrameIndex.create(song); //Indice de frames para adelantar la reproduccion
+	}
 	/**
 	 * Se encarga de actualizar la metadata de las canciones que contiene el usuario en su biblioteca propia.
 	 * @param song
@@ -130,6 +178,9 @@ public class MusicLibrary {
 			}else {
 				editJsonDoc(tag.getTitle(), tag, userName);
 			}
+			IndexLibrary.getInstance().updateSong(oldTitle != null ? oldTitle : tag.getTitle(), Json.createObjectBuilder().add("Title", tag.getTitle())
+					.add("Artist", tag.getArtist()).add("Genre", tag.getGenreDescription()).add("Album", tag.getAlbum()).add("Year", tag.getYear())
+					.add("Lyrics", tag.getLyrics()).build());
 		}
 	}
 	/**
@@ -215,28 +266,27 @@ public class MusicLibrary {
 	public void deleteSong(String songTitle, String userName) throws Exception{
 		File file = new File(folderPath + userName + "\\" + songTitle + ".mp3");
 		if(file.exists()) {
-			Files.delete(file.toPath());
-			try {
-				FileReader fileReader = new FileReader(folderPath + userName + "\\" + "MusicLibrary.json");
-				if(fileReader.ready()) {
-					InputStream tempIS = new FileInputStream(new File(folderPath + userName + "\\" + "MusicLibrary.json"));			
-					JsonReader reader = Json.createReader(tempIS);			
-					JsonArray array = reader.readArray();			
-					reader.close();
-					for(int i = 0; i < array.size(); i++) {
-						JsonObject obj = array.getJsonObject(i);
-						if(!obj.getString("Title").equalsIgnoreCase(songTitle)) {
-							arrBuilder.add(obj);
+			Files.delete(file.toPath()); //La cancion sigue en la biblioteca principal, asi que sigue en los indices
+			synchronized(CATALOGO) { //Leer, quitar la cancion y escribir sin que otro cambio entre en medio
+				try {
+					FileReader fileReader = new FileReader(folderPath + userName + "\\" + "MusicLibrary.json");
+					if(fileReader.ready()) {
+						InputStream tempIS = new FileInputStream(new File(folderPath + userName + "\\" + "MusicLibrary.json"));			
+						JsonReader reader = Json.createReader(tempIS);			
+						JsonArray array = reader.readArray();			
+						reader.close();
+						for(int i = 0; i < array.size(); i++) {
+							JsonObject obj = array.getJsonObject(i);
+							if(!obj.getString("Title").equalsIgnoreCase(songTitle)) {
+								arrBuilder.add(obj);
+							}
 						}
+						finalArray = arrBuilder.build();
+						writeJson(new File(folderPath + userName + "\\" + "MusicLibrary.json"), finalArray);
 					}
-					finalArray = arrBuilder.build();
-					OutputStream tempOS = new FileOutputStream(new File(folderPath + userName + "\\" + "MusicLibrary.json"));
-					JsonWriter writer = Json.createWriter(tempOS);
-					writer.writeArray(finalArray);
-					writer.close();
-				}
-				fileReader.close();
-			}catch(Exception ex) {}
+					fileReader.close();
+				}catch(Exception ex) {}
+			}
 		}else {
 			System.out.println("La cancion no se encuentra en la biblioteca.");
 		}
@@ -397,74 +447,39 @@ public class MusicLibrary {
 		}
 	}
 	/**
-	 * Se encarga de buscar el titulo de la cancion, utilizando el arbol B
+	 * Se encarga de buscar el titulo de la cancion, utilizando el arbol B de los indices compartidos
 	 * @param title
 	 * @return songs
 	 */
 	public String searchByTitle(String title) {
-		IndexLibrary index = new IndexLibrary();
-		BTree indexTitles = index.createTitleIndex();
-		String[] array = indexTitles.traverseTree();
-		String songs = "";
-		for (int i = 0; i < array.length; i++) {
-			String value = array[i];
-			for (int j = 0; j <= value.length()-title.length(); j++) {
-				if(value.substring(j, j+title.length()).equalsIgnoreCase(title)) {
-					songs += value + "/";
-				}
-			}
-		}
-		return songs;
+		return IndexLibrary.getInstance().searchTitles(title);
 	}
 	/**
 	 * Se encarga de buscar por nombre del artista, utilizando el arbol AVL
 	 * Búsqueda de canciones por Artista mediante Arbol tipo AVL.
-	 * Indexa el Arbol AVL, que contiene los artistas como llaves, crea un array que guarda una arreglo ordenado de esos artistas, 
-	 * recorre ese arreglo en busca del artista que se ingreso, cuando lo encuentra, obtiene sus canciones relacionadas a ese artista,
- 	 * los concatena a un storing y eso se retorna
+	 * El arbol AVL de los indices compartidos tiene como llaves el artista y el titulo, asi las canciones del
+	 * artista que se ingreso se obtienen con un recorrido de rango, se concatenan a un string y eso se retorna
 	 * @param artist
 	 * @return songs
 	 */
 	public String searchByArtist(String artist) {
-		IndexLibrary index = new IndexLibrary();
-		AVLTree indexArtist = index.createArtistIndex();
-		String[] array = indexArtist.inorder();
-		String songs = "";
-		for (int i = 0; i < array.length; i++) {
-			System.out.println(array[i]);
-			JsonObject obj = Json.createReader(new StringReader(array[i])).readObject();
-			if (obj.getString("Artist").equalsIgnoreCase(artist)){					
-				songs += obj.getString("Title") + "/";
-			}
-		}
-		
-		if(songs != "") {
+		String songs = IndexLibrary.getInstance().searchArtist(artist);
+		if(!songs.isEmpty()) {
 			return songs;
 		}else {
 			return "false";
 		}	
 	}
 	/**
-	 * Indexa el Arbol Splay, que contiene los Albumes como llaves, crea un array que guarda una arreglo ordenado de esos artistas,
-	 *  recorre ese arreglo en busca del Album que se ingreso, cuando lo encuentra, obtiene sus canciones relacionadas a ese Album,
-	 * los concatena a un storing y eso se retorna
+	 * El arbol Splay de los indices compartidos tiene como llaves el album y el titulo, asi las canciones del
+	 * album que se ingreso se obtienen con un recorrido de rango, se concatenan a un string y eso se retorna
 	 * Se encarga de buscar por nombre de album, utilizando arbol Splay
 	 * @param album
 	 * @return songs
 	 */
 	public String searchByAlbum(String album) {
-		IndexLibrary index = new IndexLibrary();
-		SplayTree indexAlbum = index.createAlbumIndex();
-		String[] array = indexAlbum.inorder();
-		String songs = "";
-		for (int i = 0; i < array.length; i++) {
-			JsonObject obj = Json.createReader(new StringReader(array[i])).readObject();
-			if (obj.getString("Album").equalsIgnoreCase(album)){
-				songs += obj.getString("Title") + "/";
-			}
-		}
-		
-		if(songs != "") {
+		String songs = IndexLibrary.getInstance().searchAlbum(album);
+		if(!songs.isEmpty()) {
 			return songs;
 		}else {
 			return "false";
@@ -472,29 +487,24 @@ public class MusicLibrary {
 		
 	}
 	/**
-	 * Indexa el Arbol Binario de Busqueda, que contiene la letra de la cancion como llave, crea un array ordenado de estos elementos,
-	 * lo recorre para buscar fragmento a fragmento en la letra coincidencias con la frase o palabra que ingreso el usaurio. Al encontrarlo,
-	 * concatena el titulo de la cancion a el string que se retornara al final de la funcion.
+	 * Busca en el indice invertido de las letras las canciones que tienen todas las palabras que ingreso el
+	 * usuario (sin distinguir mayusculas ni tildes), y concatena sus titulos al string que se retornara: primero
+	 * las que tienen la frase exacta y despues las demas, ordenadas por relevancia (BM25).
 	 * @param lyrics
 	 * @return string
 	 */
 	public String searchByLyrics(String lyrics) {
-		IndexLibrary index = new IndexLibrary();	
-		BinarySearchTree indexLyrics = index.createLyricsIndex();
-		String[] lyricsArr = indexLyrics.inorder();
-		String songs = "";
-		for (int i = 0; i < lyricsArr.length; i++) {
-			String value = lyricsArr[i];
-			for (int j = 0; j <= value.length()-lyrics.length(); j++) {
-				if(value.substring(j, j+lyrics.length()).equalsIgnoreCase(lyrics)) {
-					JsonObject obj = Json.createReader(new StringReader(value)).readObject();
-					String val = obj.getString("Title");
-					songs += val + "/";
-					break;
-				}
-			}
-		}
-		return songs;
+		return IndexLibrary.getInstance().searchLyrics(lyrics);
+	}
+	/**
+	 * Sugiere titulos, artistas y albumes que empiezan con lo que el usuario lleva escrito, de los mas a los menos
+	 * escuchados, usando los indices compartidos
+	 * @param prefix
+	 * @param limit , cantidad maxima de sugerencias
+	 * @return sugerencias separadas por "/"
+	 */
+	public String autocomplete(String prefix, int limit) {
+		return IndexLibrary.getInstance().autocomplete(prefix, limit);
 	}
 	
 	/**
@@ -564,85 +574,82 @@ public class MusicLibrary {
 			mp3File.setId3v2Tag(tag);
 		}
 		
-		try {
-			FileReader fileReader = new FileReader(folderPath + "Principal\\" + "MusicLibrary.json");
-			if(fileReader.ready()) {
-				InputStream tempIS = new FileInputStream(new File(folderPath + "Principal\\" + "MusicLibrary.json"));			
-				JsonReader reader = Json.createReader(tempIS);			
-				JsonArray oldArray = reader.readArray();			
-				reader.close();			
-				for(JsonValue i:oldArray) {
-					arrBuilder.add(i);
+		synchronized(CATALOGO) { //Otra subida no puede leer el catalogo hasta que este escrito con esta cancion
+			try {
+				FileReader fileReader = new FileReader(folderPath + "Principal\\" + "MusicLibrary.json");
+				if(fileReader.ready()) {
+					InputStream tempIS = new FileInputStream(new File(folderPath + "Principal\\" + "MusicLibrary.json"));			
+					JsonReader reader = Json.createReader(tempIS);			
+					JsonArray oldArray = reader.readArray();			
+					reader.close();			
+					for(JsonValue i:oldArray) {
+						arrBuilder.add(i);
+					}
 				}
-			}
-			fileReader.close();
-		}catch(FileNotFoundException ex) {}
+				fileReader.close();
+			}catch(FileNotFoundException ex) {}
 		
-		boolean change = false;
-		try{
-			objBuilder.add("Title", tag.getTitle()).toString();
-		}catch(NullPointerException ex) {
-			objBuilder.add("Title", "Unavailable");
-			tag.setTitle("Unavailable");
-			change = true;
-		}
-		try{
-			objBuilder.add("Artist", tag.getArtist()).toString();
-		}catch(NullPointerException ex) {
-			objBuilder.add("Artist", "Unavailable");
-			tag.setArtist("Unavailable");
-			change = true;
-		}
-		try{
-			objBuilder.add("Genre", tag.getGenreDescription()).toString();
-		}catch(NullPointerException ex) {
-			objBuilder.add("Genre", "Other");
-			tag.setGenreDescription("Other");
-			change = true;		
-		}
-		try{
-			objBuilder.add("Album", tag.getAlbum()).toString();
-		}catch(NullPointerException ex) {
-			objBuilder.add("Album", "Unavailable");
-			tag.setAlbum("Unavailable");
-			change = true;
-		}
-		try{
-			objBuilder.add("Year", tag.getYear()).toString();
-		}catch(NullPointerException ex) {
-			objBuilder.add("Year", "Unavailable");
-			tag.setYear("Unavailable");
-			change = true;
-		}
-		try{
-			objBuilder.add("Lyrics", tag.getLyrics()).toString();
-		}catch(NullPointerException ex) {
-			objBuilder.add("Lyrics", "Unavailable");
-			tag.setLyrics("Unavailable");
-			change = true;
-		}
+			boolean change = false;
+			try{
+				objBuilder.add("Title", tag.getTitle()).toString();
+			}catch(NullPointerException ex) {
+				objBuilder.add("Title", "Unavailable");
+				tag.setTitle("Unavailable");
+				change = true;
+			}
+			try{
+				objBuilder.add("Artist", tag.getArtist()).toString();
+			}catch(NullPointerException ex) {
+				objBuilder.add("Artist", "Unavailable");
+				tag.setArtist("Unavailable");
+				change = true;
+			}
+			try{
+				objBuilder.add("Genre", tag.getGenreDescription()).toString();
+			}catch(NullPointerException ex) {
+				objBuilder.add("Genre", "Other");
+				tag.setGenreDescription("Other");
+				change = true;		
+			}
+			try{
+				objBuilder.add("Album", tag.getAlbum()).toString();
+			}catch(NullPointerException ex) {
+				objBuilder.add("Album", "Unavailable");
+				tag.setAlbum("Unavailable");
+				change = true;
+			}
+			try{
+				objBuilder.add("Year", tag.getYear()).toString();
+			}catch(NullPointerException ex) {
+				objBuilder.add("Year", "Unavailable");
+				tag.setYear("Unavailable");
+				change = true;
+			}
+			try{
+				objBuilder.add("Lyrics", tag.getLyrics()).toString();
+			}catch(NullPointerException ex) {
+				objBuilder.add("Lyrics", "Unavailable");
+				tag.setLyrics("Unavailable");
+				change = true;
+			}
 		
-		if(change) {
-			tag.setPadding(true);
-			mp3File.save(mp3File.getFilename() + ".retag");
-			renameFiles(mp3File);
-			Files.deleteIfExists(userSong.toPath());
-			Files.copy(song.toPath(), userSong.toPath());
-		}
+			if(change) {
+				tag.setPadding(true);
+				mp3File.save(mp3File.getFilename() + ".retag");
+				renameFiles(mp3File);
+				Files.deleteIfExists(userSong.toPath());
+				Files.copy(song.toPath(), userSong.toPath());
+			}
 		
-		OutputStream OS = new FileOutputStream(folderPath + "Principal\\" + "MusicLibrary.json");
-		JsonObject obj = objBuilder.build();
-		arrBuilder.add(obj);
-		finalArray = arrBuilder.build();
-		JsonWriter writer = Json.createWriter(OS);
-		writer.writeArray(finalArray);
-		writer.close();
+			JsonObject obj = objBuilder.build();
+			arrBuilder.add(obj);
+			IndexLibrary.getInstance().addSong(obj);
+			finalArray = arrBuilder.build();
+			writeJson(new File(folderPath + "Principal\\" + "MusicLibrary.json"), finalArray);
 		
-		//Copia el archivo json al directorio del usuario 
-		File newFile = new File(folderPath + userName + "\\" + "MusicLibrary.json");
-		File file = new File(folderPath + "Principal\\" + "MusicLibrary.json");
-		Files.deleteIfExists(newFile.toPath());
-		Files.copy(file.toPath(), newFile.toPath());
+			//Copia el archivo json al directorio del usuario 
+			writeJson(new File(folderPath + userName + "\\" + "MusicLibrary.json"), finalArray);
+		}
 	}
 	/**
 	 * Se encarga de escribir la nueva informacion de la metadata en el archivo JSOn de las canciones
@@ -652,43 +659,87 @@ public class MusicLibrary {
 	 * @throws Exception
 	 */
 	private void editJsonDoc(String title, ID3v2 tag, String userName) throws Exception {
-		try {
-			FileReader fileReader = new FileReader(folderPath + userName + "\\" + "MusicLibrary.json");
-			if(fileReader.ready()) {
-				InputStream tempIS = new FileInputStream(new File(folderPath + userName + "\\" + "MusicLibrary.json"));			
-				JsonReader reader = Json.createReader(tempIS);			
-				JsonArray array = reader.readArray();			
-				reader.close();
-				for(int i = 0; i < array.size(); i++) {
-					JsonObject obj = array.getJsonObject(i);
-					if(obj.getString("Title").equalsIgnoreCase(title)) {
-						objBuilder.add("Title", tag.getTitle());
-						objBuilder.add("Artist", tag.getArtist());
-						objBuilder.add("Genre", tag.getGenreDescription());
-						objBuilder.add("Album", tag.getAlbum());
-						objBuilder.add("Year", tag.getYear());
-						objBuilder.add("Lyrics", tag.getLyrics());
-						JsonObject newObj = objBuilder.build();
+		synchronized(CATALOGO) {
+			try {
+				FileReader fileReader = new FileReader(folderPath + userName + "\\" + "MusicLibrary.json");
+				if(fileReader.ready()) {
+					InputStream tempIS = new FileInputStream(new File(folderPath + userName + "\\" + "MusicLibrary.json"));			
+					JsonReader reader = Json.createReader(tempIS);			
+					JsonArray array = reader.readArray();			
+					reader.close();
+					for(int i = 0; i < array.size(); i++) {
+						JsonObject obj = array.getJsonObject(i);
+						if(obj.getString("Title").equalsIgnoreCase(title)) {
+							objBuilder.add("Title", tag.getTitle());
+							objBuilder.add("Artist", tag.getArtist());
+							objBuilder.add("Genre", tag.getGenreDescription());
+							objBuilder.add("Album", tag.getAlbum());
+							objBuilder.add("Year", tag.getYear());
+							objBuilder.add("Lyrics", tag.getLyrics());
+							JsonObject newObj = objBuilder.build();
 						
-						for(int j = 0; j < array.size(); j++) {
-							if(j == i) {
-								arrBuilder.add(newObj);
-							}else {
-								arrBuilder.add(array.get(j));
+							for(int j = 0; j < array.size(); j++) {
+								if(j == i) {
+									arrBuilder.add(newObj);
+								}else {
+									arrBuilder.add(array.get(j));
+								}
 							}
-						}
-						finalArray = arrBuilder.build();
-						OutputStream tempOS = new FileOutputStream(new File(folderPath + userName + "\\" + "MusicLibrary.json"));
-						JsonWriter writer = Json.createWriter(tempOS);
-						writer.writeArray(finalArray);
-						writer.close();
-						break;
-					}	
-				}
+							finalArray = arrBuilder.build();
+							writeJson(new File(folderPath + userName + "\\" + "MusicLibrary.json"), finalArray);
+							break;
+						}	
+					}
 				
-			}
-			fileReader.close();
-		}catch(FileNotFoundException ex) {}
+				}
+				fileReader.close();
+			}catch(FileNotFoundException ex) {}
+		}
+	}
+	/**
+	 * Indica si un nombre que envia el cliente (cancion o usuario) se puede usar como nombre de archivo o carpeta:
+	 * no puede estar vacio ni tener separadores, ".." o unidad (como "C:")
+	 * @param name
+	 * @return boolean
+	 */
+	static boolean isValidName(String name) {
+		return !name.isEmpty() && !name.contains("/") && !name.contains("\\") && !name.contains("..") && !name.contains(":");
+	}
+	/**
+	 * Resuelve un nombre que envia el cliente dentro de una carpeta de la biblioteca. Ademas de isValidName, el
+	 * archivo ya resuelto debe quedar directamente dentro de la carpeta; si no, el cliente podria leer o escribir
+	 * cualquier archivo al que el servidor tenga acceso.
+	 * @param folder , carpeta sin el separador final
+	 * @param name
+	 * @return el archivo (puede no existir), o null si el nombre no es valido
+	 * @throws IOException
+	 */
+	static File inFolder(String folder, String name) throws IOException {
+		if(!isValidName(name)) {
+			return null;
+		}
+		File file = new File(folder + "\\" + name);
+		String parent = new File(folder).getCanonicalPath() + "\\";
+		String path = file.getCanonicalPath();
+		if(!path.startsWith(parent) || path.indexOf('\\', parent.length()) >= 0 || path.indexOf(File.separatorChar, parent.length()) >= 0) {
+			return null;
+		}
+		return file;
+	}
+	/**
+	 * Escribe un arreglo JSON en un temporal y lo mueve sobre el archivo, para que nadie lea el archivo a medias.
+	 * Se llama con el bloqueo CATALOGO, por eso el temporal puede tener siempre el mismo nombre.
+	 * @param file
+	 * @param array
+	 * @throws IOException
+	 */
+	private static void writeJson(File file, JsonArray array) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		OutputStream tempOS = new FileOutputStream(temp);
+		JsonWriter writer = Json.createWriter(tempOS);
+		writer.writeArray(array);
+		writer.close();
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
 	}
 	/**
 	 * Se encarga de renombrar archivos
@@ -0,0 +1,109 @@
+package musicLibrary;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+/**
+ * Numeros de las canciones de un indice (LyricsIndex, TrigramIndex). Cada cancion recibe un numero mayor que los
+ * anteriores, asi las listas de los indices quedan ordenadas con solo agregar al final. Los numeros de las canciones
+ * quitadas no se reutilizan, porque cambiar la metadata es quitar y agregar; cuando los quitados pasan de RENUMERAR y
+ * de las canciones que quedan, isSparse lo indica y renumber da numeros seguidos a las que quedan, en el mismo
+ * orden, para que el indice reescriba sus listas con ellos.
+ * No es seguro para varios hilos; lo usa cada indice con el bloqueo de IndexLibrary.
+ * @author Sebastian Alba
+ * @author David Pereira
+ * @author Randall Mendez
+ *
+ */
+class SongIds {
+	/**
+	 * Numeros de canciones quitadas a partir de los cuales se renumera, si ademas pasan de las que quedan
+	 */
+	static final int RENUMERAR = 1024;
+	private final HashMap<String, Integer> ids = new HashMap<String, Integer>(); //Llave: titulo sin mayusculas
+	private final ArrayList<String> titles = new ArrayList<String>(); //Por numero de cancion, null si se quito
+	/**
+	 * Da el siguiente numero a una cancion; el titulo no debe estar
+	 * @param title
+	 * @return el numero, mayor que todos los anteriores
+	 */
+	int add(String title) {
+		int id = titles.size();
+		titles.add(title);
+		ids.put(title.toLowerCase(Locale.ROOT), id);
+		return id;
+	}
+	/**
+	 * Numero de una cancion
+	 * @param title
+	 * @return el numero, o -1 si no esta
+	 */
+	int find(String title) {
+		Integer id = ids.get(title.toLowerCase(Locale.ROOT));
+		return id == null ? -1 : id;
+	}
+	/**
+	 * Quita una cancion, sin reutilizar su numero
+	 * @param title
+	 * @return el numero que tenia, o -1 si no estaba
+	 */
+	int remove(String title) {
+		Integer id = ids.remove(title.toLowerCase(Locale.ROOT));
+		if(id == null) {
+			return -1;
+		}
+		titles.set(id, null);
+		return id;
+	}
+	/**
+	 * Titulo de una cancion
+	 * @param id
+	 * @return el titulo, o null si se quito
+	 */
+	String title(int id) {
+		return titles.get(id);
+	}
+	/**
+	 * Cantidad de canciones que quedan
+	 * @return int
+	 */
+	int size() {
+		return ids.size();
+	}
+	/**
+	 * Numero que recibira la siguiente cancion, y largo de los arreglos que se indexan por numero
+	 * @return int
+	 */
+	int next() {
+		return titles.size();
+	}
+	/**
+	 * Indica si hay que renumerar: los numeros quitados pasan de RENUMERAR y de las canciones que quedan
+	 * @return boolean
+	 */
+	boolean isSparse() {
+		int removed = titles.size() - ids.size();
+		return removed > RENUMERAR && removed > ids.size();
+	}
+	/**
+	 * Da numeros seguidos a las canciones que quedan, en el mismo orden. Cada numero nuevo es menor o igual que el
+	 * viejo, asi quien tenga arreglos por numero los puede mover en orden ascendente sin pisar nada.
+	 * @return el numero nuevo de cada numero viejo, -1 para los quitados
+	 */
+	int[] renumber() {
+		int[] renumbered = new int[titles.size()];
+		int count = 0;
+		for(int id = 0; id < titles.size(); id++) {
+			String title = titles.get(id);
+			if(title == null) {
+				renumbered[id] = -1;
+			}else {
+				renumbered[id] = count;
+				titles.set(count, title);
+				ids.put(title.toLowerCase(Locale.ROOT), count++);
+			}
+		}
+		titles.subList(count, titles.size()).clear();
+		return renumbered;
+	}
+}
@@ -0,0 +1,132 @@
+package musicLibrary;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+/**
+ * Rango de bytes de una cancion que se le esta enviando a un cliente. Los bytes se pasan del archivo al canal
+ * del cliente con FileChannel.transferTo, sin cargar la cancion en memoria. Las canciones mas reproducidas se
+ * envian desde ChunkCache, que las mantiene fuera del heap, y solo se lee del disco la parte que no este ahi.
+ * @author Sebastian Alba
+ * @author David Pereira
+ * @author Randall Mendez
+ *
+ */
+public class SongRange {
+	private FileChannel channel;
+	private long start;
+	private long end;
+	private long position;
+	private long total;
+	private String version; //Version del archivo abierto, para la cache
+	private ChunkCache cache;
+	private ChunkCache.Chunk chunk; //Parte de la cache que se esta enviando
+	/**
+	 * Constructor de la clase
+	 * @param song
+	 * @param start , primer byte que se envia
+	 * @param end , byte donde termina el rango (no se incluye)
+	 * @param cache , cache desde donde se envia, o null para enviar directo del disco
+	 * @throws IOException
+	 */
+	SongRange(File song, long start, long end, ChunkCache cache) throws IOException {
+		this.cache = cache;
+		this.channel = FileChannel.open(song.toPath(), StandardOpenOption.READ);
+		this.total = channel.size();
+		this.version = ChunkCache.version(song, total);
+		this.start = Math.max(0, Math.min(start, total));
+		this.end = Math.max(this.start, Math.min(end, total));
+		this.position = this.start;
+	}
+	/**
+	 * Envia todo lo que el canal acepte del rango, desde donde se quedo el envio anterior. Con un canal no
+	 * bloqueante puede enviar solo una parte.
+	 * @param target
+	 * @return cantidad de bytes enviados
+	 * @throws IOException
+	 */
+	public long transferTo(WritableByteChannel target) throws IOException {
+		long sent = 0;
+		while(position < end) {
+			long n = cache == null ? channel.transferTo(position, end - position, target) : transferCached(target);
+			if(n <= 0) {
+				break;
+			}
+			position += n;
+			sent += n;
+		}
+		if(isDone()) {
+			close();
+		}
+		return sent;
+	}
+	/**
+	 * Envia lo que se pueda de la parte de la cache donde esta la posicion actual. Si la cache no tiene espacio
+	 * libre, esa parte se envia directo del disco.
+	 * @param target
+	 * @return cantidad de bytes enviados
+	 * @throws IOException
+	 */
+	private long transferCached(WritableByteChannel target) throws IOException {
+		if(chunk == null) {
+			chunk = cache.acquire(version, channel, position / ChunkCache.TAMANO_PARTE);
+		}
+		if(chunk == null || chunk.getEnd() <= position) {
+			releaseChunk();
+			return channel.transferTo(position, end - position, target);
+		}
+		int n = target.write(chunk.view(position, end));
+		if(position + n >= chunk.getEnd()) {
+			releaseChunk();
+		}
+		return n;
+	}
+	/**
+	 * Libera la parte de la cache que se estaba enviando
+	 */
+	private void releaseChunk() {
+		if(chunk != null) {
+			cache.release(chunk);
+			chunk = null;
+		}
+	}
+	/**
+	 * Indica si ya se envio todo el rango
+	 * @return boolean
+	 */
+	public boolean isDone() {
+		return position >= end;
+	}
+	/**
+	 * Cierra el archivo de la cancion
+	 */
+	public void close() {
+		releaseChunk();
+		try {
+			channel.close();
+		}catch(IOException ex) {}
+	}
+	/**
+	 * Obtiene el primer byte del rango
+	 * @return long
+	 */
+	public long getStart() {
+		return start;
+	}
+	/**
+	 * Obtiene la cantidad de bytes del rango
+	 * @return long
+	 */
+	public long getLength() {
+		return end - start;
+	}
+	/**
+	 * Obtiene el tamaño total de la cancion
+	 * @return long
+	 */
+	public long getTotal() {
+		return total;
+	}
+}
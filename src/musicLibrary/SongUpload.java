@@ -0,0 +1,84 @@
+package musicLibrary;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+/**
+ * Subida por partes de una cancion. Las partes se escriben en un archivo temporal al lado de la cancion a traves
+ * de un FileChannel, sin juntar la cancion completa en memoria. Al terminar, el temporal se mueve a la carpeta
+ * principal y se guarda la metadata como en MusicLibrary.storeSong.
+ * @author Sebastian Alba
+ * @author David Pereira
+ * @author Randall Mendez
+ *
+ */
+public class SongUpload {
+	private MusicLibrary library;
+	private File song;
+	private File temp;
+	private String songName;
+	private String userName;
+	private FileChannel channel;
+	private long received;
+	/**
+	 * Constructor de la clase, crea el archivo temporal donde se van escribiendo las partes
+	 * @param library
+	 * @param song , archivo final de la cancion en la carpeta principal
+	 * @param songName
+	 * @param userName
+	 * @throws IOException
+	 */
+	SongUpload(MusicLibrary library, File song, String songName, String userName) throws IOException {
+		this.library = library;
+		this.song = song;
+		this.songName = songName;
+		this.userName = userName;
+		this.temp = new File(song.getPath() + "." + System.nanoTime() + ".part"); //Cada subida tiene su propio temporal
+		this.channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+	}
+	/**
+	 * Escribe una parte de la cancion al final del archivo temporal
+	 * @param chunk
+	 * @throws IOException
+	 */
+	public synchronized void write(ByteBuffer chunk) throws IOException {
+		while(chunk.hasRemaining()) {
+			received += channel.write(chunk);
+		}
+	}
+	/**
+	 * Cierra el temporal, lo mueve a la carpeta principal y guarda la cancion en la biblioteca del usuario
+	 * @return false si mientras se subia otra cancion con el mismo nombre llego primero
+	 * @throws Exception
+	 */
+	public synchronized boolean finish() throws Exception {
+		channel.close();
+		if(song.exists()) {
+			Files.deleteIfExists(temp.toPath());
+			System.out.println("ERROR: La cancion ya se encuentra en la biblioteca.");
+			return false;
+		}
+		Files.move(temp.toPath(), song.toPath());
+		library.songUploaded(song, songName, userName);
+		return true;
+	}
+	/**
+	 * Cancela la subida y borra el temporal, por ejemplo si el cliente se desconecta a medias
+	 */
+	public synchronized void abort() {
+		try {
+			channel.close();
+			Files.deleteIfExists(temp.toPath());
+		}catch(IOException ex) {}
+	}
+	/**
+	 * Obtiene la cantidad de bytes recibidos hasta el momento
+	 * @return long
+	 */
+	public synchronized long getReceived() {
+		return received;
+	}
+}
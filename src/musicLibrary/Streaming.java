@@ -1 +1,210 @@
+package musicLibrary;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.json.Json;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+import javax.json.JsonWriter;
+
+import com.mpatric.mp3agic.Mp3File;
+/**
+ * Se encarga de preparar el envio de las canciones de la carpeta principal para reproducirlas en el cliente.
+ * Se puede pedir la cancion completa o solo un rango, en bytes o en milisegundos, para adelantar o reproducir
+ * una parte sin volver a enviar todo el archivo. Lleva la cuenta de reproducciones de cada cancion por su titulo
+ * (el de la etiqueta ID3, como en MusicLibrary.json y en los indices), no por el nombre del archivo; las que
+ * llegan a ChunkCache.ADMISION se envian a traves de la cache. Solo cuenta como reproduccion el envio que empieza
+ * al inicio de la cancion, no cada salto o rango que pide el mismo cliente. Las cuentas se guardan en
+ * Reproducciones.json, al lado de MusicLibrary.json, cada GUARDAR reproducciones y al cerrar el servidor.
+ * @author Sebastian Alba
+ * @author David Pereira
+ * @author Randall Mendez
+ *
+ */
+public class Streaming {
+	/**
+	 * Reproducciones nuevas entre cada vez que se guardan las cuentas
+	 */
+	public static final int GUARDAR = 32;
+	private static final String REPRODUCCIONES = System.getProperty("user.home") + "\\Documents\\MusicLibrary\\Principal\\Reproducciones.json";
+	private static final ConcurrentHashMap<String, AtomicLong> plays = load(); //Llave: titulo
+	private static final AtomicLong unsaved = new AtomicLong();
+	private static final ConcurrentHashMap<String, String> titles = new ConcurrentHashMap<String, String>(); //Llave: ruta y fecha de modificacion del archivo
+	private String home = System.getProperty("user.home"); //Obtiene la ruta principal del sistema (C://user//xxxx//)
+	private String folderPath = home + "\\Documents\\MusicLibrary\\"; //Ruta donde se almacenaran las canciones
+	/**
+	 * Constructor de la clase
+	 */
+	public Streaming() {
+
+	}
+	/**
+	 * Busca el archivo de la cancion en la carpeta principal. El nombre lo envia el cliente, por eso se valida con
+	 * MusicLibrary.inFolder; si no, se podria enviar cualquier archivo que el servidor pueda leer.
+	 * @param songName
+	 * @return el archivo, o null si no existe o el nombre no es valido
+	 * @throws IOException
+	 */
+	public File findSong(String songName) throws IOException {
+		File song = MusicLibrary.inFolder(folderPath + "Principal", songName);
+		if(song != null && song.exists()) {
+			return song;
+		}
+		return null;
+	}
+	/**
+	 * Prepara el envio de un rango de la cancion. Los limites son posiciones en bytes, o milisegundos si empiezan
+	 * con "t" (por ejemplo "t30000"); un limite vacio significa el inicio o el final de la cancion.
+	 * @param songName
+	 * @param from , inicio del rango
+	 * @param to , final del rango (no se incluye)
+	 * @return el rango listo para enviar, o null si la cancion no existe
+	 * @throws Exception
+	 */
+	public SongRange openRange(String songName, String from, String to) throws Exception {
+		File song = findSong(songName);
+		if(song == null) {
+			return null;
+		}
+		AtomicLong counter = plays.computeIfAbsent(title(song), k -> new AtomicLong());
+		long count = counter.get();
+		if(fromStart(from)) {
+			count = counter.incrementAndGet();
+			if(unsaved.incrementAndGet() % GUARDAR == 0) {
+				save();
+			}
+		}
+		ChunkCache cache = ChunkCache.getInstance();
+		boolean hot = cache.isEnabled() && count >= ChunkCache.ADMISION;
+		return new SongRange(song, toByte(song, from, 0), toByte(song, to, Long.MAX_VALUE), hot ? cache : null);
+	}
+	/**
+	 * Indica si el rango empieza al inicio de la cancion, es decir, si el cliente empieza a escucharla
+	 * @param from , inicio del rango como lo envia el cliente
+	 * @return boolean
+	 */
+	private static boolean fromStart(String from) {
+		if(from == null || from.isEmpty()) {
+			return true;
+		}
+		String number = from.charAt(0) == 't' || from.charAt(0) == 'T' ? from.substring(1) : from;
+		return Long.parseLong(number) <= 0;
+	}
+	/**
+	 * Obtiene cuantas veces se ha reproducido una cancion desde el inicio
+	 * @param title , titulo de la cancion en la biblioteca
+	 * @return long
+	 */
+	public static long getPlays(String title) {
+		AtomicLong count = plays.get(title);
+		return count == null ? 0 : count.get();
+	}
+	/**
+	 * Lee las cuentas de reproducciones guardadas
+	 * @return las cuentas, vacias si todavia no se han guardado
+	 */
+	private static ConcurrentHashMap<String, AtomicLong> load() {
+		ConcurrentHashMap<String, AtomicLong> counts = new ConcurrentHashMap<String, AtomicLong>();
+		File file = new File(REPRODUCCIONES);
+		if(file.exists()) {
+			try {
+				InputStream tempIS = new FileInputStream(file);
+				JsonReader reader = Json.createReader(tempIS);
+				JsonObject saved = reader.readObject();
+				reader.close();
+				for(Map.Entry<String, JsonValue> entry : saved.entrySet()) {
+					counts.put(entry.getKey(), new AtomicLong(((JsonNumber) entry.getValue()).longValue()));
+				}
+			}catch(Exception ex) {
+				System.out.println("No se pudieron leer las reproducciones: " + ex.getMessage());
+			}
+		}
+		return counts;
+	}
+	/**
+	 * Guarda las cuentas de reproducciones en un temporal que despues reemplaza al archivo anterior
+	 */
+	public static synchronized void save() {
+		JsonObjectBuilder saved = Json.createObjectBuilder();
+		for(Map.Entry<String, AtomicLong> entry : plays.entrySet()) {
+			saved.add(entry.getKey(), entry.getValue().get());
+		}
+		File file = new File(REPRODUCCIONES);
+		File temp = new File(REPRODUCCIONES + ".tmp");
+		try {
+			OutputStream tempOS = new FileOutputStream(temp);
+			JsonWriter writer = Json.createWriter(tempOS);
+			writer.writeObject(saved.build());
+			writer.close();
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}catch(Exception ex) {
+			System.out.println("No se pudieron guardar las reproducciones: " + ex.getMessage());
+		}
+	}
+	/**
+	 * Titulo de la etiqueta ID3 de una cancion, leido la primera vez que se reproduce (o que cambia el archivo)
+	 * @param song
+	 * @return el titulo, o el nombre del archivo si no tiene
+	 */
+	private static String title(File song) {
+		return titles.computeIfAbsent(song.getPath() + '\u0000' + song.lastModified(), k -> {
+			try {
+				Mp3File mp3File = new Mp3File(song, 64 * 1024, false); //Sin recorrer los frames, solo las etiquetas
+				if(mp3File.hasId3v2Tag() && mp3File.getId3v2Tag().getTitle() != null) {
+					return mp3File.getId3v2Tag().getTitle();
+				}
+			}catch(Exception ex) {
+				System.out.println("No se pudo leer el titulo de " + song.getName() + ": " + ex.getMessage());
+			}
+			return song.getName();
+		});
+	}
+	/**
+	 * Convierte un limite del rango a posicion en bytes
+	 * @param song
+	 * @param limit
+	 * @param empty , valor cuando el limite viene vacio
+	 * @return long
+	 * @throws Exception
+	 */
+	private long toByte(File song, String limit, long empty) throws Exception {
+		if(limit == null || limit.isEmpty()) {
+			return empty;
+		}
+		if(limit.charAt(0) == 't' || limit.charAt(0) == 'T') {
+			return timeToByte(song, Long.parseLong(limit.substring(1)));
+		}
+		return Long.parseLong(limit);
+	}
+	/**
+	 * Calcula el byte donde empieza el frame que corresponde a un tiempo de la cancion, con el indice de frames
+	 * que se arma al guardarla; si la cancion se guardo antes de que existiera el indice, se arma en ese momento
+	 * @param song
+	 * @param millis
+	 * @return long
+	 * @throws Exception
+	 */
+	private long timeToByte(File song, long millis) throws Exception {
+		return FrameIndex.forSong(song).byteAt(millis);
+	}
+	/**
+	 * Obtiene la ruta de la carpeta de canciones
+	 * @return string
+	 */
+	String getFolderPath() {
+		return folderPath;
+	}
+}
@@ -0,0 +1,251 @@
+package musicLibrary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+/**
+ * Indice de trigramas (grupos de tres caracteres seguidos) de los titulos, para buscar titulos que contienen un
+ * texto sin recorrer todo el catalogo. Cada trigrama, sin mayusculas, guarda la lista ordenada de las canciones
+ * cuyo titulo lo tiene; un titulo que contiene el texto tiene todos sus trigramas, asi los candidatos salen de
+ * intersecar esas listas, empezando por la mas corta, y despues se comprueba cada uno. Los trigramas se guardan como
+ * un long con los tres caracteres, en una tabla con llaves long (GramTable), sin armar un String ni un Long por cada
+ * uno. Los textos de menos de 3 caracteres no tienen trigramas y los debe buscar quien lo usa.
+ * Los numeros de los titulos los lleva SongIds, igual que en LyricsIndex.
+ * No es seguro para varios hilos; IndexLibrary lo usa con su bloqueo.
+ * @author Sebastian Alba
+ * @author David Pereira
+ * @author Randall Mendez
+ *
+ */
+class TrigramIndex {
+	/**
+	 * Caracteres de cada trigrama, y largo minimo de un texto para buscarlo en el indice
+	 */
+	static final int LARGO = 3;
+	private final GramTable grams = new GramTable();
+	private final SongIds ids = new SongIds();
+	/**
+	 * Lista de canciones que tienen un trigrama, en orden ascendente
+	 */
+	private static class Postings {
+		private int[] ids = new int[4];
+		private int count;
+		/**
+		 * Agrega una cancion con un numero mayor o igual que todas las de la lista
+		 * @param id
+		 */
+		private void add(int id) {
+			if(count > 0 && ids[count - 1] == id) {
+				return; //El trigrama se repite en el titulo
+			}
+			if(count == ids.length) {
+				ids = Arrays.copyOf(ids, count * 2);
+			}
+			ids[count++] = id;
+		}
+
+		private void remove(int id) {
+			int position = Arrays.binarySearch(ids, 0, count, id);
+			if(position >= 0) {
+				System.arraycopy(ids, position + 1, ids, position, count - position - 1);
+				count--;
+			}
+		}
+
+		private void renumber(int[] renumbered) {
+			for(int i = 0; i < count; i++) {
+				ids[i] = renumbered[ids[i]]; //Conserva el orden
+			}
+		}
+
+		private boolean contains(int id) {
+			return Arrays.binarySearch(ids, 0, count, id) >= 0;
+		}
+	}
+	/**
+	 * Agrega un titulo; cada titulo recibe un numero mayor que los anteriores, asi las listas quedan ordenadas
+	 * @param title
+	 */
+	void add(String title) {
+		remove(title);
+		int id = ids.add(title);
+		for(int i = 0; i + LARGO <= title.length(); i++) {
+			grams.getOrCreate(gram(title, i)).add(id);
+		}
+	}
+	/**
+	 * Quita un titulo
+	 * @param title
+	 */
+	void remove(String title) {
+		int id = ids.find(title);
+		if(id < 0) {
+			return;
+		}
+		String old = ids.title(id);
+		ids.remove(title);
+		for(int i = 0; i + LARGO <= old.length(); i++) {
+			long gram = gram(old, i);
+			Postings postings = grams.get(gram);
+			if(postings != null) {
+				postings.remove(id);
+				if(postings.count == 0) {
+					grams.remove(gram);
+				}
+			}
+		}
+		if(ids.isSparse()) {
+			int[] renumbered = ids.renumber();
+			for(Postings postings : grams.values) {
+				if(postings != null) {
+					postings.renumber(renumbered);
+				}
+			}
+		}
+	}
+	/**
+	 * Busca los titulos que contienen un texto, sin distinguir mayusculas
+	 * @param part , texto de al menos LARGO caracteres
+	 * @return titulos, en el orden en que se agregaron
+	 */
+	List<String> search(String part) {
+		List<String> found = new ArrayList<String>();
+		int size = part.length() - LARGO + 1;
+		Postings[] lists = new Postings[size];
+		for(int i = 0; i < size; i++) {
+			lists[i] = grams.get(gram(part, i));
+			if(lists[i] == null) {
+				return found; //Ningun titulo tiene ese trigrama
+			}
+		}
+		Arrays.sort(lists, (a, b) -> a.count - b.count);
+		Postings shortest = lists[0];
+		candidates:
+		for(int i = 0; i < shortest.count; i++) {
+			int id = shortest.ids[i];
+			for(int j = 1; j < size; j++) {
+				if(lists[j] != shortest && !lists[j].contains(id)) {
+					continue candidates;
+				}
+			}
+			String title = ids.title(id);
+			if(containsIgnoreCase(title, part)) { //Tener los trigramas no asegura tenerlos seguidos
+				found.add(title);
+			}
+		}
+		return found;
+	}
+	/**
+	 * Tabla de las listas por trigrama, con direccionamiento abierto y llaves long sin envolver, como EdgeSet en
+	 * FriendGraph. Un espacio vacio tiene la lista en null, asi cualquier long puede ser llave.
+	 */
+	private static class GramTable {
+		private long[] keys = new long[64];
+		private Postings[] values = new Postings[64];
+		private int count;
+
+		private Postings get(long gram) {
+			int mask = keys.length - 1;
+			for(int i = hash(gram) & mask; values[i] != null; i = (i + 1) & mask) {
+				if(keys[i] == gram) {
+					return values[i];
+				}
+			}
+			return null;
+		}
+		/**
+		 * Obtiene la lista del trigrama, creandola si no estaba
+		 */
+		private Postings getOrCreate(long gram) {
+			if((count + 1) * 2 > keys.length) {
+				grow();
+			}
+			int mask = keys.length - 1;
+			int i = hash(gram) & mask;
+			while(values[i] != null) {
+				if(keys[i] == gram) {
+					return values[i];
+				}
+				i = (i + 1) & mask;
+			}
+			keys[i] = gram;
+			values[i] = new Postings();
+			count++;
+			return values[i];
+		}
+		/**
+		 * Quita un trigrama y corre hacia atras los que siguen, para que ninguna busqueda se corte en el hueco
+		 */
+		private void remove(long gram) {
+			int mask = keys.length - 1;
+			int i = hash(gram) & mask;
+			while(values[i] != null && keys[i] != gram) {
+				i = (i + 1) & mask;
+			}
+			if(values[i] == null) {
+				return;
+			}
+			for(int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+				int home = hash(keys[j]) & mask;
+				if(((j - home) & mask) >= ((j - i) & mask)) { //Su lugar esta en el hueco o antes, se puede mover
+					keys[i] = keys[j];
+					values[i] = values[j];
+					i = j;
+				}
+			}
+			values[i] = null;
+			count--;
+		}
+
+		private static int hash(long key) {
+			key *= 0x9E3779B97F4A7C15L;
+			return (int) (key ^ (key >>> 32));
+		}
+
+		private void grow() {
+			long[] oldKeys = keys;
+			Postings[] oldValues = values;
+			keys = new long[oldKeys.length * 2];
+			values = new Postings[oldKeys.length * 2];
+			int mask = keys.length - 1;
+			for(int j = 0; j < oldKeys.length; j++) {
+				if(oldValues[j] != null) {
+					int i = hash(oldKeys[j]) & mask;
+					while(values[i] != null) {
+						i = (i + 1) & mask;
+					}
+					keys[i] = oldKeys[j];
+					values[i] = oldValues[j];
+				}
+			}
+		}
+	}
+	/**
+	 * Indica si un texto contiene otro, sin distinguir mayusculas
+	 * @param text
+	 * @param part
+	 * @return boolean
+	 */
+	static boolean containsIgnoreCase(String text, String part) {
+		for (int j = 0; j <= text.length() - part.length(); j++) {
+			if(text.regionMatches(true, j, part, 0, part.length())) {
+				return true;
+			}
+		}
+		return false;
+	}
+	/**
+	 * Trigrama que empieza en una posicion del texto, con cada caracter sin mayusculas como lo compara
+	 * regionMatches, guardado en 16 bits
+	 * @param text
+	 * @param start
+	 * @return long
+	 */
+	private static long gram(String text, int start) {
+		long gram = 0;
+		for(int i = start; i < start + LARGO; i++) {
+			gram = (gram << 16) | Character.toLowerCase(Character.toUpperCase(text.charAt(i)));
+		}
+		return gram;
+	}
+}
@@ -0,0 +1,275 @@
+package social;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+import users.UserRecord;
+import users.UserRegistry;
+/**
+ * Indice en memoria de las amistades. Cada nombre de usuario recibe un id entero y para cada id se guardan dos
+ * arreglos ordenados: a quienes agrego como amigos y quienes lo tienen agregado a el. Ademas cada amistad esta en
+ * una tabla hash de enteros largos, asi saber si A tiene a B es O(1). Las sugerencias (amigos de amigos) solo
+ * recorren los amigos de los amigos del usuario, asi su costo depende de su vecindario y no de cuantos usuarios
+ * hay en total.
+ * El indice se arma una vez con los usuarios del registro y despues se actualiza con cada cambio que avisa el
+ * registro. Las amistades solo se agregan, nunca se borran.
+ * @author Sebastian Alba
+ * @author David Pereira
+ * @author Randall Mendez
+ *
+ */
+public class FriendGraph {
+	private static final Map<UserRegistry, FriendGraph> graphs = new WeakHashMap<UserRegistry, FriendGraph>();
+	private static final int[] VACIO = new int[0];
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final HashMap<String, Integer> ids = new HashMap<String, Integer>(); //Llave sin mayusculas
+	private String[] names = new String[16];
+	private int[][] friends = new int[16][];
+	private int[] friendCount = new int[16];
+	private int[][] followers = new int[16][];
+	private int[] followerCount = new int[16];
+	private final EdgeSet edges = new EdgeSet();
+	private int size;
+	/**
+	 * Obtiene el indice de amistades de un registro, armandolo la primera vez
+	 * @param registry
+	 * @return FriendGraph
+	 */
+	public static synchronized FriendGraph of(UserRegistry registry) {
+		FriendGraph graph = graphs.get(registry);
+		if(graph == null) {
+			graph = new FriendGraph();
+			registry.addListener(graph::update); //Antes de recorrer, para no perder cambios; agregar dos veces no cambia nada
+			for(UserRecord user : registry.getUsers()) {
+				graph.update(user);
+			}
+			graphs.put(registry, graph);
+		}
+		return graph;
+	}
+	/**
+	 * Agrega las amistades de un usuario que aun no esten en el indice
+	 * @param user
+	 */
+	public void update(UserRecord user) {
+		lock.writeLock().lock();
+		try {
+			int from = id(user.getUserName());
+			names[from] = user.getUserName(); //Como se registro, aunque antes apareciera escrito distinto en otra lista
+			for(String friend : user.getFriends()) {
+				int to = id(friend);
+				if(edges.add(from, to)) {
+					friends[from] = insert(friends[from], friendCount[from]++, to);
+					followers[to] = insert(followers[to], followerCount[to]++, from);
+				}
+			}
+		}finally {
+			lock.writeLock().unlock();
+		}
+	}
+	/**
+	 * Indica si un usuario tiene agregado a otro como amigo
+	 * @param userName
+	 * @param friend
+	 * @return boolean
+	 */
+	public boolean hasFriend(String userName, String friend) {
+		lock.readLock().lock();
+		try {
+			Integer from = ids.get(UserRecord.key(userName));
+			Integer to = ids.get(UserRecord.key(friend));
+			return from != null && to != null && edges.contains(from, to);
+		}finally {
+			lock.readLock().unlock();
+		}
+	}
+	/**
+	 * Obtiene los usuarios que tienen agregado a un usuario como amigo
+	 * @param userName
+	 * @return lista de nombres
+	 */
+	public List<String> getFollowers(String userName) {
+		lock.readLock().lock();
+		try {
+			Integer id = ids.get(UserRecord.key(userName));
+			if(id == null) {
+				return Collections.emptyList();
+			}
+			List<String> list = new ArrayList<String>(followerCount[id]);
+			for(int i = 0; i < followerCount[id]; i++) {
+				list.add(names[followers[id][i]]);
+			}
+			return list;
+		}finally {
+			lock.readLock().unlock();
+		}
+	}
+	/**
+	 * Sugiere amigos de los amigos del usuario que el aun no tiene agregados, de mayor a menor cantidad de amigos
+	 * en comun (y por nombre si empatan)
+	 * @param userName
+	 * @param limit , cantidad maxima de sugerencias
+	 * @param accept , filtra los candidatos, por ejemplo para sugerir solo usuarios registrados
+	 * @return lista de nombres
+	 */
+	public List<String> suggest(String userName, int limit, Predicate<String> accept) {
+		HashMap<Integer, int[]> mutual = new HashMap<Integer, int[]>();
+		lock.readLock().lock();
+		try {
+			Integer id = ids.get(UserRecord.key(userName));
+			if(id == null) {
+				return Collections.emptyList();
+			}
+			for(int i = 0; i < friendCount[id]; i++) {
+				int friend = friends[id][i];
+				for(int j = 0; j < friendCount[friend]; j++) {
+					int candidate = friends[friend][j];
+					if(candidate != id && !edges.contains(id, candidate)) {
+						mutual.computeIfAbsent(candidate, c -> new int[1])[0]++;
+					}
+				}
+			}
+			List<Map.Entry<Integer, int[]>> ranking = new ArrayList<Map.Entry<Integer, int[]>>(mutual.entrySet());
+			ranking.sort((a, b) -> a.getValue()[0] != b.getValue()[0] ? b.getValue()[0] - a.getValue()[0]
+					: names[a.getKey()].compareToIgnoreCase(names[b.getKey()]));
+			List<String> list = new ArrayList<String>();
+			for(Map.Entry<Integer, int[]> candidate : ranking) {
+				if(list.size() >= limit) {
+					break;
+				}
+				String name = names[candidate.getKey()];
+				if(accept.test(name)) {
+					list.add(name);
+				}
+			}
+			return list;
+		}finally {
+			lock.readLock().unlock();
+		}
+	}
+	/**
+	 * Cantidad de nombres en el indice (usuarios y amigos que aparecen en sus listas)
+	 * @return int
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		}finally {
+			lock.readLock().unlock();
+		}
+	}
+	/**
+	 * Obtiene el id de un nombre, asignandole uno nuevo si no tenia
+	 * @param userName
+	 * @return int
+	 */
+	private int id(String userName) {
+		Integer id = ids.get(UserRecord.key(userName));
+		if(id != null) {
+			return id;
+		}
+		if(size == names.length) {
+			int capacity = size * 2;
+			names = Arrays.copyOf(names, capacity);
+			friends = Arrays.copyOf(friends, capacity);
+			friendCount = Arrays.copyOf(friendCount, capacity);
+			followers = Arrays.copyOf(followers, capacity);
+			followerCount = Arrays.copyOf(followerCount, capacity);
+		}
+		names[size] = userName;
+		friends[size] = VACIO;
+		followers[size] = VACIO;
+		ids.put(UserRecord.key(userName), size);
+		return size++;
+	}
+	/**
+	 * Inserta un id en un arreglo ordenado, creciendolo si hace falta
+	 * @param array
+	 * @param count , elementos usados del arreglo
+	 * @param value
+	 * @return el arreglo, o uno nuevo si hubo que crecerlo
+	 */
+	private static int[] insert(int[] array, int count, int value) {
+		if(count == array.length) {
+			array = Arrays.copyOf(array, Math.max(4, count * 2));
+		}
+		int position = -Arrays.binarySearch(array, 0, count, value) - 1;
+		System.arraycopy(array, position, array, position + 1, count - position);
+		array[position] = value;
+		return array;
+	}
+	/**
+	 * Tabla hash abierta de amistades, cada una guardada como un long (id del usuario y id del amigo)
+	 */
+	private static class EdgeSet {
+		private long[] table = new long[64]; //0 es un espacio vacio
+		private int count;
+		/**
+		 * Agrega una amistad
+		 * @return false si ya estaba
+		 */
+		private boolean add(int from, int to) {
+			if((count + 1) * 2 > table.length) {
+				grow();
+			}
+			if(put(table, key(from, to))) {
+				count++;
+				return true;
+			}
+			return false;
+		}
+		/**
+		 * Indica si la amistad esta en la tabla
+		 */
+		private boolean contains(int from, int to) {
+			long key = key(from, to);
+			int mask = table.length - 1;
+			for(int i = hash(key) & mask; table[i] != 0; i = (i + 1) & mask) {
+				if(table[i] == key) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private static long key(int from, int to) {
+			return ((long) (from + 1) << 32) | (to + 1L); //+1 para que ninguna llave sea 0
+		}
+
+		private static int hash(long key) {
+			key *= 0x9E3779B97F4A7C15L;
+			return (int) (key ^ (key >>> 32));
+		}
+
+		private static boolean put(long[] table, long key) {
+			int mask = table.length - 1;
+			int i = hash(key) & mask;
+			while(table[i] != 0) {
+				if(table[i] == key) {
+					return false;
+				}
+				i = (i + 1) & mask;
+			}
+			table[i] = key;
+			return true;
+		}
+
+		private void grow() {
+			long[] bigger = new long[table.length * 2];
+			for(long key : table) {
+				if(key != 0) {
+					put(bigger, key);
+				}
+			}
+			table = bigger;
+		}
+	}
+}
@@ -1,19 +1,7 @@
 package social;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.OutputStream;
-import java.io.StringReader;
-
-import javax.json.Json;
-import javax.json.JsonArray;
-import javax.json.JsonArrayBuilder;
-import javax.json.JsonObject;
-import javax.json.JsonObjectBuilder;
-import javax.json.JsonWriter;
-
-import treeStructure.BinarySearchTree;
-import treeStructure.BinaryTreeNode;
+import users.UserRecord;
+import users.UserRegistry;
 /**
  * dministración y presentación de listas de amigos, obteniendo los amigos del
 árbol binario de búsqueda que contiene el registro de usuarios,según el usuario
@@ -27,20 +15,13 @@ de amigos de ese usuario del árbol
  *
  */
 public class Friends {
-	private BinarySearchTree usersTree;
+	private UserRegistry registry;
 	/**
 	 * Constructor de la clase
-	 * @param usersTree
+	 * @param registry , registro de usuarios
 	 */
-	public Friends(BinarySearchTree usersTree) {
-		this.usersTree = usersTree;
-	}
-	/**
-	 * Se encarga de setear el arbol de usuarios
-	 * @param usersTree
-	 */
-	public void setUsersTrees(BinarySearchTree usersTree) {
-		this.usersTree = usersTree;
+	public Friends(UserRegistry registry) {
+		this.registry = registry;
 	}
 	/**
 	 * Se encarga de agregar amigos al registro del usuario
@@ -51,42 +32,12 @@ public class Friends {
 	public String addFriends(String[] friend) throws Exception {
 		//["usuario", "amigo"]
 		//["amigo1", "amigo2", "amigo3"]
-		if(usersTree.searchNode(friend[1]) == null) {
+		if(!registry.exists(friend[1]) || !registry.exists(friend[0])) {
 			System.out.println("El amigo que desea agregar no existe");
 			return "false";
 		}
-		if(!friendAlreadyExists(friend[0], friend[1])) {
-			String[] array = usersTree.inorder();
-			JsonArrayBuilder arrBuilder = Json.createArrayBuilder();
-			for(int i = 0; i < array.length; i++) {
-				JsonObjectBuilder objBuilder = Json.createObjectBuilder();
-				JsonObject obj = Json.createReader(new StringReader(array[i])).readObject();
-				if(obj.getString("UserName").equalsIgnoreCase(friend[0])) {
-					JsonArray friends = obj.getJsonArray("Friends");
-					JsonArrayBuilder arrBuilder2 = Json.createArrayBuilder();
-					for(int j = 0; j < friends.size(); j++) {
-						arrBuilder2.add(friends.get(j));
-					}
-					arrBuilder2.add(friend[1]);
-					objBuilder.add("UserName", obj.get("UserName"));
-					objBuilder.add("Name", obj.get("Name"));
-					objBuilder.add("Age", obj.get("Age"));
-					objBuilder.add("MusicalGenres", obj.get("MusicalGenres"));
-					objBuilder.add("Password", obj.get("Password"));				
-					objBuilder.add("Friends", arrBuilder2.build());
-					objBuilder.add("Messages", obj.get("Messages"));
-					arrBuilder.add(objBuilder.build());
-				}else {
-					arrBuilder.add(obj);
-				}
-			}
-			
-			JsonArray finalArray = arrBuilder.build();
-			OutputStream tempOS = new FileOutputStream(new File("usuarios.json"));
-			JsonWriter writer = Json.createWriter(tempOS);
-			writer.writeArray(finalArray);
-			writer.close();
-			
+		UserRecord updated = registry.updateUser(friend[0], user -> friendAlreadyExists(user, friend[1]) ? null : user.withFriend(friend[1]));
+		if(updated != null) {
 			System.out.println("Amigo agregado");
 			return "true";
 		}else {
@@ -101,33 +52,33 @@ public class Friends {
 	 * @throws Exception
 	 */
 	public String getFriendsList(String userName) throws Exception {
-		BinaryTreeNode userData = usersTree.searchNode(userName);								// Obtiene el nodo que contiene el usuario
-		JsonObject obj = Json.createReader(new StringReader(userData.getValue())).readObject(); // llama al valor que contiene, y lo parsea a JsonObject
-		String friendsList = "";
-		
-		JsonArray friends = obj.getJsonArray("Friends");
-		for(int j = 0; j < friends.size(); j++) {
-			friendsList += friends.getString(j) + "/";
+		UserRecord user = registry.getUser(userName); // Obtiene el registro del usuario
+		StringBuilder friendsList = new StringBuilder();
+		for(String friend : user.getFriends()) {
+			friendsList.append(friend).append('/');
 		}
-		return friendsList;
+		return friendsList.toString();
 	}
 	/**
-	 * Se encarga de verificar si el amigo ya esta agregado
+	 * Se encarga de sugerir amigos de los amigos del usuario, primero los que tienen mas amigos en comun con el
 	 * @param userName
+	 * @param limit , cantidad maxima de sugerencias
+	 * @return string
+	 */
+	public String getSuggestions(String userName, int limit) {
+		StringBuilder suggestions = new StringBuilder();
+		for(String suggestion : FriendGraph.of(registry).suggest(userName, limit, registry::exists)) {
+			suggestions.append(suggestion).append('/');
+		}
+		return suggestions.toString();
+	}
+	/**
+	 * Se encarga de verificar si el amigo ya esta agregado
+	 * @param user , registro del usuario
 	 * @param friend
 	 * @return boolean
-	 * @throws Exception
 	 */
-	private boolean friendAlreadyExists(String userName, String friend) throws Exception {
-		BinaryTreeNode userData = usersTree.searchNode(userName);								// Obtiene el nodo que contiene el usuario
-		JsonObject obj = Json.createReader(new StringReader(userData.getValue())).readObject(); // llama al valor que contiene, y lo parsea a JsonObject
-		JsonArray friends = obj.getJsonArray("Friends");
-		for(int j = 0; j < friends.size(); j++) {
-			if(friends.getString(j).equalsIgnoreCase(friend)) {
-				return true;
-			}
-		}			
-		return false;
+	private boolean friendAlreadyExists(UserRecord user, String friend) {
+		return user.hasFriend(friend);
 	}
 }
-
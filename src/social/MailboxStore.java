@@ -0,0 +1,391 @@
+package social;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import users.UserRecord;
+/**
+ * Buzones de mensajes de recomendacion, uno por usuario y separados del registro de usuarios, asi un mensaje nuevo
+ * no reescribe el registro del receptor ni hace mas lenta la lectura de los demas usuarios.
+ * Cada buzon es un archivo al que solo se le agregan mensajes al final. Cada mensaje se guarda como
+ * [entero largo][long id][long fecha][short largo emisor][emisor UTF-8][texto UTF-8]. El id es consecutivo por
+ * usuario y empieza en 1. En memoria solo se guarda la posicion de cada mensaje en el archivo, asi leer una
+ * pagina (los ultimos N, o los que siguen a un id) lee solo esos mensajes.
+ * Cada buzon guarda a lo mucho RETENCION mensajes. Cuando llega al doble se reescribe con los ultimos RETENCION;
+ * los ids no cambian. El limite se cambia con -Dodyssey.retencionMensajes.
+ * @author Sebastian Alba
+ * @author David Pereira
+ * @author Randall Mendez
+ *
+ */
+public class MailboxStore {
+	/**
+	 * Carpeta de los buzones
+	 */
+	public static final String DIRECTORIO = "buzones";
+	/**
+	 * Mensajes que se guardan por usuario
+	 */
+	public static final int RETENCION = 1000;
+	private static final int CABECERA = 4 + 8 + 8 + 2;
+	private static MailboxStore instance;
+	private final File directory;
+	private final int retention;
+	private final ConcurrentHashMap<String, Mailbox> mailboxes = new ConcurrentHashMap<String, Mailbox>();
+	/**
+	 * Mensaje guardado en un buzon
+	 */
+	public static class Entry {
+		private final long id;
+		private final long time;
+		private final String sender;
+		private final String text;
+
+		private Entry(long id, long time, String sender, String text) {
+			this.id = id;
+			this.time = time;
+			this.sender = sender;
+			this.text = text;
+		}
+		/**
+		 * Obtiene el id del mensaje en el buzon
+		 * @return long
+		 */
+		public long getId() {
+			return id;
+		}
+		/**
+		 * Obtiene la fecha en que llego el mensaje, en milisegundos
+		 * @return long
+		 */
+		public long getTime() {
+			return time;
+		}
+		/**
+		 * Obtiene el usuario que envio el mensaje
+		 * @return string
+		 */
+		public String getSender() {
+			return sender;
+		}
+		/**
+		 * Obtiene el texto del mensaje
+		 * @return string
+		 */
+		public String getText() {
+			return text;
+		}
+	}
+	/**
+	 * Constructor de la clase
+	 * @param directory , carpeta de los buzones
+	 * @param retention , mensajes que se guardan por usuario
+	 */
+	MailboxStore(File directory, int retention) {
+		this.directory = directory;
+		this.retention = Math.max(1, retention);
+		directory.mkdirs();
+	}
+	/**
+	 * Obtiene los buzones compartidos por todo el servidor
+	 * @return MailboxStore
+	 */
+	public static synchronized MailboxStore getInstance() {
+		if(instance == null) {
+			instance = new MailboxStore(new File(DIRECTORIO), Integer.getInteger("odyssey.retencionMensajes", RETENCION));
+		}
+		return instance;
+	}
+	/**
+	 * Agrega un mensaje al final del buzon del usuario
+	 * @param userName , receptor
+	 * @param sender , emisor
+	 * @param text
+	 * @return id del mensaje
+	 * @throws IOException
+	 */
+	public long append(String userName, String sender, String text) throws IOException {
+		return mailbox(userName).append(sender, text, System.currentTimeMillis());
+	}
+	/**
+	 * Pasa al buzon los mensajes que el usuario tenia guardados en el registro, solo si el buzon esta vacio; asi
+	 * si se llama de nuevo (por ejemplo el servidor se cayo antes de borrarlos del registro) no se repiten
+	 * @param userName
+	 * @param messages
+	 * @throws IOException
+	 */
+	public void migrate(String userName, List<UserRecord.Message> messages) throws IOException {
+		Mailbox mailbox = mailbox(userName);
+		synchronized(mailbox) {
+			if(mailbox.lastId() == 0) {
+				for(UserRecord.Message message : messages) {
+					mailbox.append(message.getSender(), message.getText(), 0);
+				}
+			}
+		}
+	}
+	/**
+	 * Obtiene los ultimos mensajes del buzon
+	 * @param userName
+	 * @param count , cantidad maxima de mensajes
+	 * @return mensajes, del mas viejo al mas nuevo
+	 * @throws IOException
+	 */
+	public List<Entry> latest(String userName, int count) throws IOException {
+		return mailbox(userName).latest(count);
+	}
+	/**
+	 * Obtiene los mensajes que llegaron despues de uno
+	 * @param userName
+	 * @param id , id del ultimo mensaje que ya se leyo (0 para empezar desde el mas viejo que se guarda)
+	 * @param count , cantidad maxima de mensajes
+	 * @return mensajes, del mas viejo al mas nuevo
+	 * @throws IOException
+	 */
+	public List<Entry> since(String userName, long id, int count) throws IOException {
+		return mailbox(userName).since(id, count);
+	}
+	/**
+	 * Cantidad de mensajes guardados en el buzon
+	 * @param userName
+	 * @return int
+	 * @throws IOException
+	 */
+	public int size(String userName) throws IOException {
+		return mailbox(userName).size();
+	}
+	/**
+	 * Obtiene el buzon de un usuario, abriendolo la primera vez
+	 * @param userName
+	 * @return Mailbox
+	 * @throws IOException
+	 */
+	private Mailbox mailbox(String userName) throws IOException {
+		try {
+			return mailboxes.computeIfAbsent(UserRecord.key(userName), key -> {
+				try {
+					return new Mailbox(new File(directory, fileName(key)));
+				}catch(IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			});
+		}catch(UncheckedIOException ex) {
+			throw ex.getCause();
+		}
+	}
+	/**
+	 * Nombre del archivo del buzon: letras, numeros, "-" y "_" se dejan igual y los demas caracteres se escriben
+	 * en hexadecimal, para que cualquier nombre de usuario sea un nombre de archivo valido
+	 * @param key , nombre de usuario sin mayusculas
+	 * @return string
+	 */
+	private static String fileName(String key) {
+		StringBuilder name = new StringBuilder();
+		for(int i = 0; i < key.length(); i++) {
+			char c = key.charAt(i);
+			if((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '_') {
+				name.append(c);
+			}else {
+				name.append('%').append(Integer.toHexString(c)).append('%');
+			}
+		}
+		return name.append(".mbx").toString();
+	}
+	/**
+	 * Buzon de un usuario
+	 */
+	private class Mailbox {
+		private final File file;
+		private FileChannel channel;
+		private long[] offsets = new long[8]; //Posicion de cada mensaje guardado, del mas viejo al mas nuevo
+		private int count;
+		private long firstId = 1; //Id del mensaje en offsets[0]
+		private long end;
+		/**
+		 * Abre el buzon y arma el indice de posiciones leyendo solo la cabecera de cada mensaje. Un mensaje
+		 * incompleto al final (el servidor se cayo mientras lo escribia) se descarta.
+		 * @param file
+		 * @throws IOException
+		 */
+		private Mailbox(File file) throws IOException {
+			this.file = file;
+			this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			long size = channel.size();
+			ByteBuffer header = ByteBuffer.allocate(12);
+			while(end + 12 <= size) {
+				header.clear();
+				readFully(header, end);
+				header.flip();
+				int length = header.getInt();
+				long id = header.getLong();
+				if(length < CABECERA - 4 || end + 4 + length > size) {
+					break;
+				}
+				if(count == 0) {
+					firstId = id;
+				}
+				add(end);
+				end += 4 + length;
+			}
+			if(end < size) {
+				channel.truncate(end);
+			}
+		}
+		/**
+		 * Id del ultimo mensaje, o 0 si el buzon nunca ha tenido mensajes
+		 * @return long
+		 */
+		private synchronized long lastId() {
+			return count == 0 ? firstId - 1 : firstId + count - 1;
+		}
+		/**
+		 * Cantidad de mensajes guardados
+		 * @return int
+		 */
+		private synchronized int size() {
+			return count;
+		}
+		/**
+		 * Agrega un mensaje al final
+		 * @param sender
+		 * @param text
+		 * @param time
+		 * @return id del mensaje
+		 * @throws IOException
+		 */
+		private synchronized long append(String sender, String text, long time) throws IOException {
+			byte[] senderBytes = sender.getBytes(StandardCharsets.UTF_8);
+			byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+			long id = lastId() + 1;
+			ByteBuffer entry = ByteBuffer.allocate(CABECERA + senderBytes.length + textBytes.length);
+			entry.putInt(entry.capacity() - 4).putLong(id).putLong(time).putShort((short) senderBytes.length).put(senderBytes).put(textBytes);
+			entry.flip();
+			long position = end;
+			while(entry.hasRemaining()) {
+				position += channel.write(entry, position);
+			}
+			channel.force(false);
+			if(count == 0) {
+				firstId = id;
+			}
+			add(end);
+			end = position;
+			if(count >= 2 * retention) {
+				compact();
+			}
+			return id;
+		}
+		/**
+		 * Obtiene los ultimos mensajes
+		 * @param max
+		 * @return lista
+		 * @throws IOException
+		 */
+		private synchronized List<Entry> latest(int max) throws IOException {
+			return read(Math.max(0, count - Math.max(0, max)), count);
+		}
+		/**
+		 * Obtiene los mensajes que siguen a un id
+		 * @param id
+		 * @param max
+		 * @return lista
+		 * @throws IOException
+		 */
+		private synchronized List<Entry> since(long id, int max) throws IOException {
+			int from = (int) Math.max(0, Math.min(count, id + 1 - firstId));
+			return read(from, (int) Math.min(count, (long) from + Math.max(0, max)));
+		}
+		/**
+		 * Lee los mensajes entre dos posiciones del indice
+		 * @param from
+		 * @param to , no se incluye
+		 * @return lista
+		 * @throws IOException
+		 */
+		private List<Entry> read(int from, int to) throws IOException {
+			List<Entry> entries = new ArrayList<Entry>(to - from);
+			if(from >= to) {
+				return entries;
+			}
+			ByteBuffer data = ByteBuffer.allocate((int) ((to == count ? end : offsets[to]) - offsets[from]));
+			readFully(data, offsets[from]);
+			data.flip();
+			while(data.hasRemaining()) {
+				int length = data.getInt();
+				int next = data.position() + length;
+				long id = data.getLong();
+				long time = data.getLong();
+				byte[] sender = new byte[data.getShort() & 0xffff];
+				data.get(sender);
+				byte[] text = new byte[next - data.position()];
+				data.get(text);
+				entries.add(new Entry(id, time, new String(sender, StandardCharsets.UTF_8), new String(text, StandardCharsets.UTF_8)));
+			}
+			return entries;
+		}
+		/**
+		 * Reescribe el buzon con los ultimos RETENCION mensajes. Se escribe un archivo temporal y se reemplaza el
+		 * buzon de una vez, asi una caida en medio deja el buzon viejo completo.
+		 * @throws IOException
+		 */
+		private void compact() throws IOException {
+			int keep = count - retention;
+			long start = offsets[keep];
+			File temp = new File(file.getPath() + ".tmp");
+			try(FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				long copied = 0;
+				while(copied < end - start) {
+					copied += channel.transferTo(start + copied, end - start - copied, out);
+				}
+				out.force(true);
+			}
+			channel.close();
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+			long[] kept = new long[Math.max(8, retention * 2)];
+			for(int i = keep; i < count; i++) {
+				kept[i - keep] = offsets[i] - start;
+			}
+			offsets = kept;
+			count -= keep;
+			firstId += keep;
+			end -= start;
+		}
+		/**
+		 * Agrega una posicion al indice
+		 * @param offset
+		 */
+		private void add(long offset) {
+			if(count == offsets.length) {
+				offsets = Arrays.copyOf(offsets, count * 2);
+			}
+			offsets[count++] = offset;
+		}
+		/**
+		 * Lee del archivo hasta llenar el buffer
+		 * @param buffer
+		 * @param position
+		 * @throws IOException
+		 */
+		private void readFully(ByteBuffer buffer, long position) throws IOException {
+			while(buffer.hasRemaining()) {
+				int read = channel.read(buffer, position);
+				if(read < 0) {
+					throw new IOException("Fin inesperado del buzon " + file.getName());
+				}
+				position += read;
+			}
+		}
+	}
+}
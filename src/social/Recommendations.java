@@ -1,79 +1,48 @@
 package social;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.OutputStream;
-import java.io.StringReader;
+import java.io.IOException;
+import java.util.List;
 
-import javax.json.Json;
-import javax.json.JsonArray;
-import javax.json.JsonArrayBuilder;
-import javax.json.JsonObject;
-import javax.json.JsonObjectBuilder;
-import javax.json.JsonWriter;
-
-import treeStructure.BinarySearchTree;
-import treeStructure.BinaryTreeNode;
+import users.UserRecord;
+import users.UserRegistry;
 /**
- * Clase encargada de  gestionar recomendaciones que se le hacen al usuario
+ * Clase encargada de  gestionar recomendaciones que se le hacen al usuario. Los mensajes se guardan en el buzon
+ * de cada usuario (MailboxStore), no en el registro de usuarios.
  * @author Sebastian Alba
  * @author David Pereira
  * @author Randall Mendez 
  */
 public class Recommendations {
-	private BinarySearchTree usersTree;
+	private UserRegistry registry;
+	private MailboxStore mailboxes;
 	/**
 	 * Constructor de la clase
-	 * @param usersTree
+	 * @param registry , registro de usuarios
 	 */
-	public Recommendations(BinarySearchTree usersTree) {
-		this.usersTree = usersTree;
+	public Recommendations(UserRegistry registry) {
+		this(registry, MailboxStore.getInstance());
 	}
 	/**
-	 * Settea el arbol 
-	 * @param usersTree
+	 * Constructor de la clase
+	 * @param registry , registro de usuarios
+	 * @param mailboxes , buzones de mensajes
 	 */
-	public void setUsersTrees(BinarySearchTree usersTree) {
-		this.usersTree = usersTree;
+	public Recommendations(UserRegistry registry, MailboxStore mailboxes) {
+		this.registry = registry;
+		this.mailboxes = mailboxes;
 	}
 	/**
-	 * Se encarga de añadir nuevos mensajes al registro del usuario
+	 * Se encarga de añadir nuevos mensajes al buzon del usuario
 	 * @param message
 	 * @throws Exception
 	 */
 	public void addMessages(String[] message) throws Exception {
 		//["emisor", "receptor", "mensaje"]
-		//[{"emisor":"", "mensaje", ""}, {"emisor":"", "mensaje":""}]
-		String[] array = usersTree.inorder();
-		JsonArrayBuilder arrBuilder = Json.createArrayBuilder();
-		for(int i = 0; i < array.length; i++) {
-			JsonObjectBuilder objBuilder = Json.createObjectBuilder();
-			JsonObject obj = Json.createReader(new StringReader(array[i])).readObject();
-			if(obj.getString("UserName").equalsIgnoreCase(message[1])) {
-				JsonArray messages = obj.getJsonArray("Messages");
-				JsonArrayBuilder arrBuilder2 = Json.createArrayBuilder();
-				for(int j = 0; j < messages.size(); j++) {
-					arrBuilder2.add(messages.get(j));
-				}
-				arrBuilder2.add(Json.createObjectBuilder().add("Emisor", message[0]).add("Message", message[2]).build());
-				objBuilder.add("UserName", obj.get("UserName"));
-				objBuilder.add("Name", obj.get("Name"));
-				objBuilder.add("Age", obj.get("Age"));
-				objBuilder.add("MusicalGenres", obj.get("MusicalGenres"));
-				objBuilder.add("Password", obj.get("Password"));				
-				objBuilder.add("Friends", obj.get("Friends"));
-				objBuilder.add("Messages", arrBuilder2.build());
-				arrBuilder.add(objBuilder.build());
-			}else {
-				arrBuilder.add(obj);
-			}
+		if(!registry.exists(message[1])) {
+			return;
 		}
-		
-		JsonArray finalArray = arrBuilder.build();
-		OutputStream tempOS = new FileOutputStream(new File("usuarios.json"));
-		JsonWriter writer = Json.createWriter(tempOS);
-		writer.writeArray(finalArray);
-		writer.close();
+		migrate(message[1]);
+		mailboxes.append(message[1], message[0], message[2]);
 	}
 	/**
 	 * Se encarga de obtener los mensajes que tiene el usuario en sesion
@@ -82,16 +51,43 @@ public class Recommendations {
 	 * @throws Exception
 	 */
 	public String getMessagesList(String userName) throws Exception {
-		BinaryTreeNode userData = usersTree.searchNode(userName);								// Obtiene el nodo que contiene el usuario
-		JsonObject obj = Json.createReader(new StringReader(userData.getValue())).readObject(); // llama al valor que contiene, y lo parsea a JsonObject
-		String messageList = "";
-		System.out.println(obj);
-		JsonArray messages = obj.getJsonArray("Messages");
-		for(int j = 0; j < messages.size(); j++) {
-			JsonObject msg = messages.getJsonObject(j);
-			messageList += msg.getString("Emisor") + "/" + msg.getString("Message") + "/";
+		migrate(userName);
+		StringBuilder messageList = new StringBuilder();
+		for(MailboxStore.Entry msg : mailboxes.latest(userName, Integer.MAX_VALUE)) {
+			messageList.append(msg.getSender()).append('/').append(msg.getText()).append('/');
 		}
 		System.out.println(messageList);
-		return messageList;
+		return messageList.toString();
+	}
+	/**
+	 * Se encarga de obtener una pagina de los mensajes del usuario en sesion. Cada mensaje va con su id, para
+	 * pedir la pagina siguiente con desde igual al ultimo id recibido.
+	 * @param userName
+	 * @param count , cantidad maxima de mensajes
+	 * @param since , id a partir del cual se leen (sin incluirlo), o un numero negativo para leer los ultimos
+	 * @return string "id/emisor/mensaje/" por cada mensaje
+	 * @throws Exception
+	 */
+	public String getMessagesList(String userName, int count, long since) throws Exception {
+		migrate(userName);
+		List<MailboxStore.Entry> page = since < 0 ? mailboxes.latest(userName, count) : mailboxes.since(userName, since, count);
+		StringBuilder messageList = new StringBuilder();
+		for(MailboxStore.Entry msg : page) {
+			messageList.append(msg.getId()).append('/').append(msg.getSender()).append('/').append(msg.getText()).append('/');
+		}
+		return messageList.toString();
+	}
+	/**
+	 * Pasa al buzon los mensajes que el usuario todavia tenga guardados en el registro
+	 * @param userName
+	 * @throws IOException
+	 */
+	private void migrate(String userName) throws IOException {
+		UserRecord user = registry.getUser(userName);
+		if(user == null || user.getMessages().isEmpty()) {
+			return;
+		}
+		mailboxes.migrate(user.getUserName(), user.getMessages());
+		registry.updateUser(userName, current -> current.getMessages().isEmpty() ? null : current.withoutMessages());
 	}
 }
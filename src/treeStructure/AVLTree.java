@@ -15,12 +15,16 @@ public class AVLTree extends BinarySearchTree{
 		this.size = 0;
 	}
 	/**
-	 * Funcion encargada de llamar la funcion principal de la insercion de nodos
+	 * Funcion encargada de llamar la funcion principal de la insercion de nodos. Si la llave ya existe se reemplaza
+	 * su valor.
 	 */
 	@Override
 	public void insertNode(String value, String key) {
+		changed = false;
 		this.root = insert(value, root, key);
-		this.size += 1;
+		if(changed) {
+			this.size += 1;
+		}
 	}
 	/**
 	 * Metodo encargado de insertar nodos
@@ -32,12 +36,13 @@ public class AVLTree extends BinarySearchTree{
 	private BinaryTreeNode insert(String value, BinaryTreeNode root, String key) {
 		if(root == null) {
 			root = new BinaryTreeNode(value, key);
+			changed = true;
 		}else{
 			int comparisson = key.compareToIgnoreCase(root.getKey()); //Negativo value es menor alfab. Positivo value es mayor alfab.
 			if(comparisson < 0) {
 				root.setLeft(insert(value, root.getLeft(), key));
 				if(consultHeight(root.getLeft()) - consultHeight(root.getRight()) == 2) {					
-					if(key.compareToIgnoreCase(root.getRight().getKey()) < 0) {
+					if(key.compareToIgnoreCase(root.getLeft().getKey()) < 0) { //Se inserto a la izquierda del hijo izquierdo
 						root = rotateLeftLeft(root);
 					}else {
 						root = rotateRightLeft(root);
@@ -52,9 +57,45 @@ public class AVLTree extends BinarySearchTree{
 						root = rotateLeftRight(root);
 					}
 				}
-			}						
+			}else { //Ya existe: se reemplaza el valor
+				root.setValue(value);
+			}
 		}
 		root.setHeight(getMax(consultHeight(root.getLeft()), consultHeight(root.getRight())) + 1);
 		return root;
 	}
+	/**
+	 * Borra el nodo con la llave y rebalancea el camino de vuelta a la raiz
+	 */
+	@Override
+	protected BinaryTreeNode delete(BinaryTreeNode r, String key) {
+		return balance(super.delete(r, key));
+	}
+	/**
+	 * Actualiza la altura del nodo y aplica la rotacion que corresponda si sus subarboles difieren en mas de uno
+	 * @param node
+	 * @return la nueva raiz del subarbol
+	 */
+	private BinaryTreeNode balance(BinaryTreeNode node) {
+		if(node == null) {
+			return null;
+		}
+		node.setHeight(getMax(consultHeight(node.getLeft()), consultHeight(node.getRight())) + 1);
+		int difference = consultHeight(node.getLeft()) - consultHeight(node.getRight());
+		if(difference > 1) {
+			BinaryTreeNode left = node.getLeft();
+			if(consultHeight(left.getLeft()) >= consultHeight(left.getRight())) {
+				return rotateLeftLeft(node);
+			}
+			return rotateRightLeft(node);
+		}
+		if(difference < -1) {
+			BinaryTreeNode right = node.getRight();
+			if(consultHeight(right.getRight()) >= consultHeight(right.getLeft())) {
+				return rotateRightRight(node);
+			}
+			return rotateLeftRight(node);
+		}
+		return node;
+	}
 }
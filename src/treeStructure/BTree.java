@@ -1,4 +1,7 @@
 package treeStructure;
+
+import java.util.ArrayList;
+import java.util.List;
 /**
  * Clase encargada de definir estructura del arbol B
  * @author Sebastian Alba
@@ -11,8 +14,6 @@ public class BTree {
 	private BTreeNode root;
 	private int size;
 	private static int order;
-	int count = 0;
-	String[] arr;
 	/**
 	 * Constructor de la clase
 	 * @param order
@@ -64,7 +65,7 @@ public class BTree {
 		}
 		nodeA.setChild(nodeC, i+1);
 		
-		for(int j = nodeA.getCountKeys(); j > i; j--) {
+		for(int j = nodeA.getCountKeys() - 1; j >= i; j--) { //Corre las llaves desde la i para abrir espacio a la que sube
 			nodeA.setValue(nodeA.getValue(j), j+1);
 		}
 		nodeA.setValue(nodeB.getValue(order-1), i);
@@ -141,7 +142,7 @@ public class BTree {
 			i++;
 		}
 		
-		if(i <= root.getCountKeys() && key.compareToIgnoreCase(root.getValue(i)) == 0) {
+		if(i < root.getCountKeys() && key.compareToIgnoreCase(root.getValue(i)) == 0) {
 			return root;
 		}
 		
@@ -153,53 +154,239 @@ public class BTree {
 		}
 	}
 	/**
-	 * Se encarga de borrar la llave de la pagina
+	 * Se encarga de borrar una llave del arbol B, manteniendo todas las paginas (menos la raiz) con al menos
+	 * order-1 llaves: antes de bajar a una pagina que tiene el minimo se le pasa una llave de una hermana o se une
+	 * con ella, asi el borrado se hace en una sola bajada. Si la llave esta repetida (sin distinguir mayusculas) se
+	 * borra una de ellas.
 	 * @param key
 	 */
 	public void deleteKey(String key) {
-		BTreeNode temp = new BTreeNode(order, null);
-		temp = searchNode(this.root, key);
-		
-		if(temp.isLeaf() && temp.getCountKeys() > (order-1)){
-			int i = 0;
-			while(key.compareToIgnoreCase(temp.getValue(i)) > 0) {
-				i++;
+		if(delete(this.root, key)) {
+			this.size--;
+		}
+		if(this.root.getCountKeys() == 0 && !this.root.isLeaf()) { //La raiz quedo vacia tras unir sus dos hijos
+			this.root = this.root.getChild(0);
+		}
+	}
+	/**
+	 * Borra la llave del subarbol; la pagina tiene al menos order llaves, o es la raiz
+	 * @param node
+	 * @param key
+	 * @return true si la llave estaba
+	 */
+	private boolean delete(BTreeNode node, String key) {
+		int i = 0;
+		while(i < node.getCountKeys() && key.compareToIgnoreCase(node.getValue(i)) > 0) {
+			i++;
+		}
+		if(i < node.getCountKeys() && key.compareToIgnoreCase(node.getValue(i)) == 0) {
+			if(node.isLeaf()) {
+				for(int j = i; j < node.getCountKeys() - 1; j++) {
+					node.setValue(node.getValue(j + 1), j);
+				}
+				node.setValue(null, node.getCountKeys() - 1);
+				node.setCountKeys(node.getCountKeys() - 1);
+				return true;
 			}
-			
-			for(int j = i; j < (2*order - 2); j++) {
-				temp.setValue(temp.getValue(j+1), j);
+			BTreeNode left = node.getChild(i);
+			BTreeNode right = node.getChild(i + 1);
+			if(left.getCountKeys() >= order) { //Se reemplaza por la llave anterior y se borra esa
+				String previous = maxKey(left);
+				node.setValue(previous, i);
+				return delete(left, previous);
+			}
+			if(right.getCountKeys() >= order) { //Se reemplaza por la llave siguiente y se borra esa
+				String next = minKey(right);
+				node.setValue(next, i);
+				return delete(right, next);
+			}
+			merge(node, i);
+			return delete(left, key);
+		}
+		if(node.isLeaf()) {
+			return false;
+		}
+		if(node.getChild(i).getCountKeys() < order) {
+			if(i > 0 && node.getChild(i - 1).getCountKeys() >= order) {
+				borrowFromLeft(node, i);
+			}else if(i < node.getCountKeys() && node.getChild(i + 1).getCountKeys() >= order) {
+				borrowFromRight(node, i);
+			}else if(i < node.getCountKeys()) {
+				merge(node, i);
+			}else {
+				merge(node, i - 1);
+				i--;
 			}
-			temp.setCountKeys(temp.getCountKeys()-1);
+		}
+		return delete(node.getChild(i), key);
+	}
+	/**
+	 * Une el hijo i, la llave i y el hijo i+1 en el hijo i
+	 * @param node
+	 * @param i
+	 */
+	private void merge(BTreeNode node, int i) {
+		BTreeNode left = node.getChild(i);
+		BTreeNode right = node.getChild(i + 1);
+		int count = left.getCountKeys();
+		left.setValue(node.getValue(i), count);
+		for(int j = 0; j < right.getCountKeys(); j++) {
+			left.setValue(right.getValue(j), count + 1 + j);
+		}
+		if(!left.isLeaf()) {
+			for(int j = 0; j <= right.getCountKeys(); j++) {
+				left.setChild(right.getChild(j), count + 1 + j);
+			}
+		}
+		left.setCountKeys(count + 1 + right.getCountKeys());
+		for(int j = i; j < node.getCountKeys() - 1; j++) {
+			node.setValue(node.getValue(j + 1), j);
+			node.setChild(node.getChild(j + 2), j + 1);
+		}
+		node.setValue(null, node.getCountKeys() - 1);
+		node.setChild(null, node.getCountKeys());
+		node.setCountKeys(node.getCountKeys() - 1);
+	}
+	/**
+	 * Pasa una llave de la hermana izquierda al hijo i, a traves del padre
+	 * @param node
+	 * @param i
+	 */
+	private void borrowFromLeft(BTreeNode node, int i) {
+		BTreeNode child = node.getChild(i);
+		BTreeNode sibling = node.getChild(i - 1);
+		for(int j = child.getCountKeys(); j > 0; j--) {
+			child.setValue(child.getValue(j - 1), j);
+		}
+		if(!child.isLeaf()) {
+			for(int j = child.getCountKeys() + 1; j > 0; j--) {
+				child.setChild(child.getChild(j - 1), j);
+			}
+			child.setChild(sibling.getChild(sibling.getCountKeys()), 0);
+			sibling.setChild(null, sibling.getCountKeys());
+		}
+		child.setValue(node.getValue(i - 1), 0);
+		child.setCountKeys(child.getCountKeys() + 1);
+		node.setValue(sibling.getValue(sibling.getCountKeys() - 1), i - 1);
+		sibling.setValue(null, sibling.getCountKeys() - 1);
+		sibling.setCountKeys(sibling.getCountKeys() - 1);
+	}
+	/**
+	 * Pasa una llave de la hermana derecha al hijo i, a traves del padre
+	 * @param node
+	 * @param i
+	 */
+	private void borrowFromRight(BTreeNode node, int i) {
+		BTreeNode child = node.getChild(i);
+		BTreeNode sibling = node.getChild(i + 1);
+		child.setValue(node.getValue(i), child.getCountKeys());
+		if(!child.isLeaf()) {
+			child.setChild(sibling.getChild(0), child.getCountKeys() + 1);
+			for(int j = 0; j < sibling.getCountKeys(); j++) {
+				sibling.setChild(sibling.getChild(j + 1), j);
+			}
+			sibling.setChild(null, sibling.getCountKeys());
+		}
+		child.setCountKeys(child.getCountKeys() + 1);
+		node.setValue(sibling.getValue(0), i);
+		for(int j = 0; j < sibling.getCountKeys() - 1; j++) {
+			sibling.setValue(sibling.getValue(j + 1), j);
+		}
+		sibling.setValue(null, sibling.getCountKeys() - 1);
+		sibling.setCountKeys(sibling.getCountKeys() - 1);
+	}
+	/**
+	 * Llave mayor del subarbol
+	 * @param node
+	 * @return string
+	 */
+	private String maxKey(BTreeNode node) {
+		while(!node.isLeaf()) {
+			node = node.getChild(node.getCountKeys());
+		}
+		return node.getValue(node.getCountKeys() - 1);
+	}
+	/**
+	 * Llave menor del subarbol
+	 * @param node
+	 * @return string
+	 */
+	private String minKey(BTreeNode node) {
+		while(!node.isLeaf()) {
+			node = node.getChild(0);
+		}
+		return node.getValue(0);
+	}
+	/**
+	 * Obtiene la cantidad de llaves del arbol
+	 * @return int
+	 */
+	public int getSize() {
+		return this.size;
+	}
+	/**
+	 * Busca las llaves que empiezan con un prefijo, sin distinguir mayusculas. Como el arbol esta ordenado, esas
+	 * llaves estan seguidas y solo se recorren los hijos que pueden tener alguna.
+	 * @param prefix
+	 * @return llaves en orden
+	 */
+	public List<String> searchPrefix(String prefix) {
+		List<String> keys = new ArrayList<String>();
+		searchPrefix(this.root, prefix, keys);
+		return keys;
+	}
+	/**
+	 * Recorre en orden las llaves del subarbol que empiezan con el prefijo
+	 * @param node
+	 * @param prefix
+	 * @param keys , donde se agregan las llaves
+	 */
+	private void searchPrefix(BTreeNode node, String prefix, List<String> keys) {
+		int previous = -1; //Comparacion de la llave anterior con el prefijo, el primer hijo no tiene
+		for(int i = 0; i <= node.getCountKeys(); i++) {
+			int comparisson = 1; //Despues de la ultima llave
+			if(i < node.getCountKeys()) {
+				String key = node.getValue(i);
+				comparisson = key.substring(0, Math.min(key.length(), prefix.length())).compareToIgnoreCase(prefix);
+			}
+			if(!node.isLeaf() && previous <= 0 && comparisson >= 0) { //El hijo esta entre la llave anterior y esta
+				searchPrefix(node.getChild(i), prefix, keys);
+			}
+			if(comparisson > 0) {
+				return;
+			}
+			if(comparisson == 0) {
+				keys.add(node.getValue(i));
+			}
+			previous = comparisson;
 		}
 	}
-	
 	/**
 	 * LLama a la funcion principal para recorrer el arbol
-	 * @return array
+	 * @return array con las llaves en orden
 	 */
 	public String[] traverseTree() {
-		arr = new String[this.size];
-		traverse(this.root);
-		return arr;
+		String[] array = new String[this.size];
+		traverse(this.root, array, 0); //Sin campos compartidos, asi se puede recorrer mas de una vez y desde varios hilos
+		return array;
 	}
 	/**
-	 * Funcion principal para recorrer el arbol
+	 * Funcion principal para recorrer el arbol, en orden
 	 * @param node
+	 * @param array , donde se guardan las llaves
+	 * @param count , posicion de la siguiente llave
+	 * @return posicion despues de la ultima llave del subarbol
 	 */
-	public void traverse(BTreeNode node){
-		for(int i = 0; i < node.getCountKeys(); i++){
-			//System.out.print(node.getValue(i)+ " "); //Aqui imprime el nodo raiz
-			this.arr[this.count] = node.getValue(i);
-			this.count ++;
-		}
-
-		if(!node.isLeaf()) {//ingresa si el nodo no es una hoja
-			for(int j = 0; j <= node.getCountKeys()  ; j++) { //Este ciclo imprime el arbol recursivamente
-				if(node.getChild(j) != null) {
-					//System.out.println();
-					traverse(node.getChild(j));
-				}
+	private int traverse(BTreeNode node, String[] array, int count) {
+		for(int i = 0; i < node.getCountKeys(); i++) {
+			if(!node.isLeaf()) {
+				count = traverse(node.getChild(i), array, count);
 			}
+			array[count++] = node.getValue(i);
+		}
+		if(!node.isLeaf()) {
+			count = traverse(node.getChild(node.getCountKeys()), array, count);
 		}
+		return count;
 	}
 }
@@ -1,4 +1,7 @@
 package treeStructure;
+
+import java.util.ArrayList;
+import java.util.List;
 /**
  * Clase encargada de crear la estructura del arbol binario de busqueda
  * @author Sebastian Alba
@@ -8,8 +11,7 @@ package treeStructure;
 public class BinarySearchTree {
 	protected BinaryTreeNode root;
 	protected int size;
-	private String[] array;
-    private int count = 0;
+	protected boolean changed; //Indica si la ultima insercion o borrado agrego o quito un nodo
 	/**
 	 * Constructor de la clase
 	 */
@@ -18,13 +20,16 @@ public class BinarySearchTree {
 		this.size = 0;
 	}
 	/**
-	 * Se encarga de llamar al metodo principal de la insercion de nodos
+	 * Se encarga de llamar al metodo principal de la insercion de nodos. Si la llave ya existe se reemplaza su valor.
 	 * @param value
 	 * @param key
 	 */
 	public void insertNode(String value, String key) {
+		changed = false;
 		this.root = insert(root, value, key);
-		this.size += 1;
+		if(changed) {
+			this.size += 1;
+		}
 	}
 	/**
 	 * Funcion que llama al metodo de busqueda
@@ -39,7 +44,18 @@ public class BinarySearchTree {
 	 * @param key
 	 */
 	public void deleteNode(String key) {
-		delete(root, key);
+		changed = false;
+		this.root = delete(root, key);
+		if(changed) {
+			this.size -= 1;
+		}
+	}
+	/**
+	 * Obtiene la cantidad de nodos del arbol
+	 * @return int
+	 */
+	public int getSize() {
+		return this.size;
 	}
 	/**
 	 * Se encarga de settear el nodo raiz
@@ -67,6 +83,7 @@ public class BinarySearchTree {
 	 */
 	public void makeTreeEmpty() {
 		this.root = null;
+		this.size = 0;
 	}
 	/**
 	 * Se encarga de consultar la altura del arbol
@@ -100,10 +117,43 @@ public class BinarySearchTree {
 	 * @return array
 	 */
     public String[] inorder(){
-    	array = new String[size];
-    	inorder(root);
+    	String[] array = new String[size];
+    	inorder(root, array, 0); //Sin campos compartidos, asi dos recorridos a la vez no se mezclan
         return array;
     }
+	/**
+	 * Obtiene en orden los valores cuya llave empieza con un prefijo (sin distinguir mayusculas). Solo baja por
+	 * los subarboles que pueden tener llaves con el prefijo, asi cuesta la altura del arbol mas los valores que
+	 * encuentra. No cambia el arbol (tampoco en el Splay), asi se puede usar desde varios hilos a la vez.
+	 * @param prefix
+	 * @return lista de valores
+	 */
+	public List<String> searchPrefix(String prefix) {
+		List<String> values = new ArrayList<String>();
+		searchPrefix(root, prefix, values);
+		return values;
+	}
+	/**
+	 * Recorre en orden las llaves del subarbol que empiezan con el prefijo
+	 * @param r
+	 * @param prefix
+	 * @param values , donde se agregan los valores
+	 */
+	private void searchPrefix(BinaryTreeNode r, String prefix, List<String> values) {
+		while(r != null) {
+			String key = r.getKey();
+			int comparisson = key.substring(0, Math.min(key.length(), prefix.length())).compareToIgnoreCase(prefix);
+			if(comparisson < 0) { //Todo el subarbol izquierdo es menor que el prefijo
+				r = r.getRight();
+			}else if(comparisson > 0) {
+				r = r.getLeft();
+			}else {
+				searchPrefix(r.getLeft(), prefix, values);
+				values.add(r.getValue());
+				r = r.getRight();
+			}
+		}
+	}
     /**
      * Se encarga de la rotacion izq-izq del arbol binario
      * @param k2
@@ -151,15 +201,17 @@ public class BinarySearchTree {
     /**
      * Se encarga de recorrer el arbol en Inorden
      * @param r
+     * @param array , donde se guardan los valores
+     * @param count , posicion del siguiente valor
+     * @return posicion despues del ultimo valor del subarbol
      */
-    private void inorder(BinaryTreeNode r){
+    private int inorder(BinaryTreeNode r, String[] array, int count){
         if (r != null){
-            inorder(r.getLeft());
+            count = inorder(r.getLeft(), array, count);
             array[count++] = r.getValue();
-            inorder(r.getRight());
-        }else {    
-        	return;
+            count = inorder(r.getRight(), array, count);
         }
+        return count;
     }
     /**
      * Se encarga de insertar los nodos en el arbol binario
@@ -171,17 +223,20 @@ public class BinarySearchTree {
     private BinaryTreeNode insert(BinaryTreeNode root, String value, String key) {
     	if(root == null) {
     		root = new BinaryTreeNode(value, key);
+    		changed = true;
     		return root;
     	}
     	
-    	int comparisson = value.compareToIgnoreCase(root.getValue());
-    	if(comparisson < 0) { //El valor a insertar es menor al de la raiz
+    	int comparisson = key.compareToIgnoreCase(root.getKey()); //Se ordena por llave, igual que en la busqueda
+    	if(comparisson < 0) { //La llave a insertar es menor a la de la raiz
     		root.setLeft(insert(root.getLeft(), value, key));    		
     	}
-    	else if(comparisson > 0) { //El valor a insertar es mayor al de la raiz
+    	else if(comparisson > 0) { //La llave a insertar es mayor a la de la raiz
     		root.setRight(insert(root.getRight(), value, key));
     	}
-    	//else: ya existe entonces retorna la raiz sin cambiar nada
+    	else { //Ya existe: se reemplaza el valor
+    		root.setValue(value);
+    	}
     	return root;
     }
     /**
@@ -207,38 +262,41 @@ public class BinarySearchTree {
 		return r;
 	}
 	/**
-	 * Se encarga de borrar los nodos del arbol binario	
+	 * Se encarga de borrar los nodos del arbol binario, comparando por llave igual que la insercion y la busqueda
 	 * @param r
 	 * @param key
 	 * @return BinaryTreeNode
 	 */
-	private BinaryTreeNode delete(BinaryTreeNode r, String key) {
+	protected BinaryTreeNode delete(BinaryTreeNode r, String key) {
 		if(r == null) {
 			return null;
 		}		
 
-		if(r.getKey() == key) {
-			if(r.getLeft() == null && r.getRight() == null) { //Nodo es hoja
-				return null;
-			}
-			else if(r.getLeft() == null && r.getRight() != null) {//Nodo solo tiene hijo derecho
+		int comparisson = key.compareToIgnoreCase(r.getKey());
+		if(comparisson == 0) {
+			changed = true;
+			if(r.getLeft() == null) { //Nodo es hoja o solo tiene hijo derecho
 				return r.getRight();
 			}
-			else if(r.getRight() == null && r.getLeft() != null) {//Nodo solo tiene hijo izquierdo
+			else if(r.getRight() == null) {//Nodo solo tiene hijo izquierdo
 				return r.getLeft();
 			}
-			else if(r.getLeft() != null && r.getRight() != null) {//Nodo tiene dos hijos
-				String min = findMin(r.getRight());
-				r.setValue(min);
-				r.setRight(delete(r.getRight(), min));
+			else {//Nodo tiene dos hijos: toma la llave y el valor del menor del subarbol derecho
+				BinaryTreeNode min = r.getRight();
+				while(min.getLeft() != null) {
+					min = min.getLeft();
+				}
+				r.setKey(min.getKey());
+				r.setValue(min.getValue());
+				r.setRight(delete(r.getRight(), min.getKey()));
 				return r;
 			}
 		}
-		if(key.compareToIgnoreCase(r.getKey()) < 0) {
+		if(comparisson < 0) {
 			r.setLeft(delete(r.getLeft(), key));
 			return r;
 		}
 		r.setRight(delete(r.getRight(), key));
 		return r;
 	}
-}
\ No newline at end of file
+}
@@ -44,7 +44,7 @@ public class SplayTree extends BinarySearchTree{
 			this.size += 1;
 		}
 		else {//Value es igual que la raiz solo actualiza el valor
-			root.setKey(key);
+			root.setValue(value);
 		}
 		
 	}
@@ -80,9 +80,10 @@ public class SplayTree extends BinarySearchTree{
 			}else {
 				BinaryTreeNode node = root.getRight();
 				root = root.getLeft();
-				splay(root, key);
+				root = splay(root, key); //La mayor llave de la izquierda sube sin hijo derecho
 				root.setRight(node);
 			}
+			this.size -= 1;
 		}
 		//else: el nodo no se encontro en el arbol, no hay nada que eliminar
 	}
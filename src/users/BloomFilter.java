@@ -0,0 +1,96 @@
+package users;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+/**
+ * Filtro de Bloom para saber en tiempo constante que un nombre de usuario seguro no esta registrado. Si el filtro
+ * dice que no esta, no esta; si dice que puede estar, hay que buscarlo en el registro (se equivoca en cerca del 1%
+ * de los nombres que no estan mientras no pase de su capacidad). Los bits estan en un AtomicLongArray, asi se
+ * puede consultar y agregar desde varios hilos sin bloqueos.
+ * @author Sebastian Alba
+ * @author David Pereira
+ * @author Randall Mendez
+ *
+ */
+class BloomFilter {
+	/**
+	 * Bits por nombre de la capacidad (con HASHES funciones da cerca de 1% de falsos positivos)
+	 */
+	static final int BITS_POR_NOMBRE = 10;
+	/**
+	 * Posiciones que se marcan por nombre
+	 */
+	static final int HASHES = 7;
+	private final AtomicLongArray bits;
+	private final long size;
+	private final int capacity;
+	private final AtomicInteger count = new AtomicInteger();
+	/**
+	 * Constructor de la clase
+	 * @param capacity , nombres que puede tener sin pasarse de la tasa de falsos positivos
+	 */
+	BloomFilter(int capacity) {
+		this.capacity = Math.max(1, capacity);
+		this.size = (long) this.capacity * BITS_POR_NOMBRE;
+		this.bits = new AtomicLongArray((int) ((size + 63) / 64));
+	}
+	/**
+	 * Agrega un nombre
+	 * @param key , nombre de usuario sin mayusculas
+	 */
+	void add(String key) {
+		long hash = hash(key);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for(int i = 0; i < HASHES; i++) {
+			long bit = Math.floorMod(h1 + (long) i * h2, size);
+			int word = (int) (bit >>> 6);
+			long mask = 1L << bit;
+			long old;
+			while(((old = bits.get(word)) & mask) == 0 && !bits.compareAndSet(word, old, old | mask)) {
+				//Otro hilo cambio la misma palabra, se vuelve a intentar
+			}
+		}
+		count.incrementAndGet();
+	}
+	/**
+	 * Indica si el nombre puede estar
+	 * @param key , nombre de usuario sin mayusculas
+	 * @return false si seguro no esta
+	 */
+	boolean mightContain(String key) {
+		long hash = hash(key);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for(int i = 0; i < HASHES; i++) {
+			long bit = Math.floorMod(h1 + (long) i * h2, size);
+			if((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+	/**
+	 * Indica si ya tiene mas nombres que su capacidad y conviene armar uno mas grande
+	 * @return boolean
+	 */
+	boolean isFull() {
+		return count.get() > capacity;
+	}
+	/**
+	 * Hash de 64 bits del nombre (FNV-1a con una mezcla final), de donde salen las HASHES posiciones
+	 * @param key
+	 * @return long
+	 */
+	private static long hash(String key) {
+		long hash = 0xcbf29ce484222325L;
+		for(int i = 0; i < key.length(); i++) {
+			hash ^= key.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
@@ -1,13 +1,6 @@
 package users;
 
-import java.io.StringReader;
 import java.security.MessageDigest;
-
-import javax.json.Json;
-import javax.json.JsonObject;
-
-import treeStructure.BinarySearchTree;
-import treeStructure.BinaryTreeNode;
 /**
  * Clase encargada de definir un usuario existente en el registro
  * @author Sebastian Alba
@@ -17,17 +10,17 @@ import treeStructure.BinaryTreeNode;
 public class ExistingUser {
 	private String userName;
 	private String password;
-	private BinarySearchTree usersTree;
+	private UserRegistry registry;
 	/**
 	 * Constructor de la clase
 	 * @param userName
 	 * @param password
-	 * @param usersTree
+	 * @param registry , registro de usuarios
 	 */
-	public ExistingUser(String userName, String password, BinarySearchTree usersTree) {
+	public ExistingUser(String userName, String password, UserRegistry registry) {
 		this.userName = userName;
 		this.password = password;
-		this.usersTree = usersTree;
+		this.registry = registry;
 	}
 	/**
 	 * Se encarga de validar el inicio de sesion del usuario
@@ -35,11 +28,10 @@ public class ExistingUser {
 	 * @throws Exception
 	 */
 	public boolean logIn() throws Exception{
-		BinaryTreeNode userData = this.usersTree.searchNode(this.userName);
-		if(userData != null) {																		   // Obtiene el valor del Nodo
-			JsonObject object = Json.createReader(new StringReader(userData.getValue())).readObject(); // y lo parsea a un JsonObject
+		UserRecord user = this.registry.getUser(this.userName);
+		if(user != null) {
 			String passwordEncode = encodePassword(this.password);
-			if(object.getString("Password").equalsIgnoreCase(passwordEncode)) {
+			if(user.getPassword().equalsIgnoreCase(passwordEncode)) {
 				System.out.println("Inicio exitoso");
 				return true;
 			}else {
@@ -57,13 +49,21 @@ public class ExistingUser {
 	 * @throws Exception
 	 */
 	public String getExistingUserNames() throws Exception {
-		String[] array = this.usersTree.inorder();
-		String existingUsers = "";
-		for(int i = 0; i < array.length; i++) {
-			JsonObject obj = Json.createReader(new StringReader(array[i])).readObject();
-			existingUsers += obj.getString("UserName") + "/";
+		return this.registry.getUserNames();
+	}
+	/**
+	 * Se encarga de obtener una pagina de los nickname que empiezan con un prefijo
+	 * @param prefix
+	 * @param limit , cantidad maxima de nickname
+	 * @param after , ultimo nickname de la pagina anterior, o null para la primera
+	 * @return string
+	 */
+	public String getExistingUserNames(String prefix, int limit, String after) {
+		StringBuilder names = new StringBuilder();
+		for(String name : this.registry.findUserNames(prefix, limit, after)) {
+			names.append(name).append('/');
 		}
-		return existingUsers;
+		return names.toString();
 	}
 	/**
 	 * Se encarga de codificar la contraseña  con protocolo Hash MD5
@@ -13,26 +13,12 @@ package users;
 	Luego signUser() Verifica el registro del usuario e ingresa su información en el JSON, 
 	encodePassword codifica la contraseña y la guarda.
  */
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.security.MessageDigest;
-
-import javax.json.Json;
-import javax.json.JsonArray;
-import javax.json.JsonObjectBuilder;
-import javax.json.JsonReader;
-import javax.json.JsonValue;
-import javax.json.JsonArrayBuilder;
-import javax.json.JsonObject;
-import javax.json.JsonWriter;
-
-import treeStructure.BinarySearchTree;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 /**
  * Se encarga de definir un nuevo usuario
  * @author Sebastian Alba
@@ -40,25 +26,20 @@ import treeStructure.BinarySearchTree;
  * @author Randall Mendez 
  */
 public class NewUser {
-	private BinarySearchTree usersTree;
-	private OutputStream ots;
-	private JsonObjectBuilder userBuilder;
-	private JsonArrayBuilder musicalGenresBuilder;
-	private JsonArrayBuilder friendsBuilder;
-	private JsonArrayBuilder arrayBuilder;
-	private JsonArray users;
+	private UserRegistry registry;
 	private String userName;
+	private String name = "";
+	private int age;
+	private String password = "";
+	private List<String> musicalGenres = new ArrayList<String>();
+	private List<String> friends = new ArrayList<String>();
 	/**
 	 * Constructor de la clase
-	 * @param usersTree
+	 * @param registry , registro de usuarios
 	 * @throws FileNotFoundException
 	 */
-	public NewUser(BinarySearchTree usersTree) throws FileNotFoundException {
-		this.usersTree = usersTree;
-		this.userBuilder = Json.createObjectBuilder();
-		this.musicalGenresBuilder = Json.createArrayBuilder();
-		this.friendsBuilder = Json.createArrayBuilder();
-		this.arrayBuilder = Json.createArrayBuilder();
+	public NewUser(UserRegistry registry) throws FileNotFoundException {
+		this.registry = registry;
 	}
 	/**
 	 * Se encarga de settear el nombre de usuario
@@ -66,21 +47,20 @@ public class NewUser {
 	 */
 	public void setUserName(String userName) {
 		this.userName = userName;
-		userBuilder.add("UserName", userName);
 	}
 	/**
 	 * Se encarga de settear el nombre
 	 * @param name
 	 */
 	public void setName(String name) {
-		userBuilder.add("Name", name);
+		this.name = name;
 	}
 	/**
 	 * Se encarga de settear la edad
 	 * @param age
 	 */
 	public void setAge(int age) {
-		userBuilder.add("Age", age);
+		this.age = age;
 	}
 	/**
 	 * Se encarga de establecer los generos musicales favoritos
@@ -89,10 +69,9 @@ public class NewUser {
 	public void setMusicalGenres(String[] musicalGenres) {
 		for (String i : musicalGenres) {
 			if (i != null) {
-				musicalGenresBuilder.add(i);
+				this.musicalGenres.add(i);
 			}
 		}
-		userBuilder.add("MusicalGenres", musicalGenresBuilder);
 	}
 	/**
 	 * Se encarga de settear la contraseña CODIFICADA!!!!! 
@@ -100,8 +79,7 @@ public class NewUser {
 	 * @throws Exception
 	 */
 	public void setPassword(String password) throws Exception {
-		password = encodePassword(password);
-		userBuilder.add("Password", password);
+		this.password = encodePassword(password);
 	}
 	/**
 	 * Se encarga de settear las listas de los amigos
@@ -110,48 +88,24 @@ public class NewUser {
 	public void setFriends(String[] friends) {
 		for (String i : friends) {
 			if (i != null) {
-				friendsBuilder.add(i);
+				this.friends.add(i);
 			}
 		}
-		userBuilder.add("Friends", friendsBuilder);
 	}
 	/**
-	 * Se encarga de verificar el registro del usuario e ingresar su informacion en el documento de JSON
-	 * @return	JSON OBJECT
+	 * Se encarga de verificar el registro del usuario e ingresarlo en el registro, que lo guarda en el documento
+	 * de JSON
+	 * @return	el registro del usuario, o null si el usuario ya existe
 	 * @throws IOException
 	 */
-	public JsonObject signInUser() throws IOException {
-		if(this.usersTree.searchNode(this.userName) == null){ //Valida que el usuario no se encuentre dentro del arbol de registro
-			userBuilder.add("Messages", Json.createArrayBuilder().build());
-			
-			try {
-				FileReader fileReader = new FileReader("usuarios.json");
-				if (fileReader.ready()) {
-					InputStream IS = new FileInputStream(new File("usuarios.json"));
-					JsonReader reader = Json.createReader(IS);
-					JsonArray oldArray = reader.readArray();
-					reader.close();
-					for (JsonValue i : oldArray) {
-						arrayBuilder.add(i);
-					}
-				}
-				fileReader.close();
-			} catch (Exception ex) {}
-	
-			ots = new FileOutputStream("usuarios.json");
-			JsonObject user = userBuilder.build();
-			arrayBuilder.add(user);
-			users = arrayBuilder.build();
-			JsonWriter jsonWriter = Json.createWriter(ots);
-			jsonWriter.writeArray(users);
-			jsonWriter.close();
-	
+	public UserRecord signInUser() throws IOException {
+		UserRecord user = new UserRecord(userName, name, age, musicalGenres, password, friends, Collections.<UserRecord.Message>emptyList());
+		if(this.registry.addUser(user)){ //Valida que el usuario no se encuentre dentro del registro
 			return user;
 		}else {
 			System.out.println("ERROR: El usuario ya existe!");
 			return null;
 		}
-		
 	}
 	/**
 	 * Se encarga de codificar la contraseña 
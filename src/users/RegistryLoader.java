@@ -0,0 +1,342 @@
+package users;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import javax.json.Json;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParserFactory;
+/**
+ * Carga el archivo de registro de usuarios sin armar el arbol de objetos JSON completo: el archivo se mapea en
+ * memoria y un JsonParser (streaming) convierte cada usuario directo a un UserRecord mientras lee. En archivos
+ * grandes primero se buscan puntos de corte entre usuarios (un recorrido de bytes que solo sigue la profundidad y
+ * las comillas) y cada segmento se lee en un hilo distinto. Asi el heap solo guarda los registros, no una copia
+ * del archivo en objetos JSON.
+ * @author Sebastian Alba
+ * @author David Pereira
+ * @author Randall Mendez
+ *
+ */
+class RegistryLoader {
+	/**
+	 * Bytes a partir de los cuales el archivo se lee en paralelo
+	 */
+	static final int MINIMO_PARALELO = 1024 * 1024;
+	private static final JsonParserFactory FACTORY = Json.createParserFactory(null);
+
+	private RegistryLoader() {
+	}
+	/**
+	 * Lee todos los usuarios del archivo, en el orden en que estan guardados
+	 * @param file , archivo con un arreglo JSON de usuarios
+	 * @param apply , recibe cada usuario
+	 * @throws IOException
+	 */
+	static void load(File file, Consumer<UserRecord> apply) throws IOException {
+		if(file.length() > Integer.MAX_VALUE) {
+			throw new IOException("El registro de usuarios es demasiado grande para mapearlo: " + file.length() + " bytes");
+		}
+		MappedByteBuffer data;
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		int parts = data.limit() < MINIMO_PARALELO ? 1 : Runtime.getRuntime().availableProcessors();
+		List<int[]> segments = split(data, parts);
+		if(segments.size() <= 1) {
+			for(int[] segment : segments) {
+				parse(data, segment[0], segment[1], apply);
+			}
+			return;
+		}
+		ExecutorService workers = Executors.newFixedThreadPool(segments.size(), r -> {
+			Thread thread = new Thread(r, "cargar-usuarios");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			List<Future<List<UserRecord>>> results = new ArrayList<Future<List<UserRecord>>>();
+			for(int[] segment : segments) {
+				results.add(workers.submit(() -> {
+					List<UserRecord> users = new ArrayList<UserRecord>();
+					parse(data, segment[0], segment[1], users::add);
+					return users;
+				}));
+			}
+			for(Future<List<UserRecord>> result : results) { //En orden, para que un usuario repetido quede igual que al leerlo seguido
+				for(UserRecord user : result.get()) {
+					apply.accept(user);
+				}
+			}
+		}catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException(ex);
+		}catch(ExecutionException ex) {
+			throw new IOException(ex.getCause());
+		}finally {
+			workers.shutdown();
+		}
+	}
+	/**
+	 * Divide el arreglo en segmentos de tamaño parecido que empiezan y terminan en el borde de un usuario
+	 * @param data , archivo mapeado
+	 * @param parts , cantidad de segmentos que se buscan
+	 * @return lista de [inicio, fin) de cada segmento, sin los corchetes del arreglo
+	 * @throws IOException si el archivo no es un arreglo
+	 */
+	private static List<int[]> split(ByteBuffer data, int parts) throws IOException {
+		int open = skipSpaces(data, 0);
+		int close = data.limit() - 1;
+		while(close > open && Character.isWhitespace(data.get(close))) {
+			close--;
+		}
+		if(open >= data.limit() || data.get(open) != '[' || data.get(close) != ']') {
+			throw new IOException("El registro de usuarios no es un arreglo JSON");
+		}
+		int start = open + 1;
+		if(parts <= 1) {
+			return Collections.singletonList(new int[] {start, close});
+		}
+		List<int[]> segments = new ArrayList<int[]>();
+		long target = start + (long) (close - start) / parts;
+		int depth = 0;
+		boolean string = false;
+		for(int i = start; i < close; i++) {
+			byte b = data.get(i);
+			if(string) {
+				if(b == '\\') {
+					i++;
+				}else if(b == '"') {
+					string = false;
+				}
+			}else if(b == '"') {
+				string = true;
+			}else if(b == '{' || b == '[') {
+				depth++;
+			}else if(b == '}' || b == ']') {
+				depth--;
+			}else if(b == ',' && depth == 0 && i >= target) { //Coma entre dos usuarios
+				segments.add(new int[] {start, i});
+				start = i + 1;
+				target = start + (long) (close - start) / (parts - segments.size());
+				if(segments.size() == parts - 1) {
+					break;
+				}
+			}
+		}
+		segments.add(new int[] {start, close});
+		return segments;
+	}
+	/**
+	 * Primera posicion que no es un espacio
+	 * @param data
+	 * @param from
+	 * @return int
+	 */
+	private static int skipSpaces(ByteBuffer data, int from) {
+		while(from < data.limit() && Character.isWhitespace(data.get(from))) {
+			from++;
+		}
+		return from;
+	}
+	/**
+	 * Lee los usuarios de un segmento del arreglo
+	 * @param data , archivo mapeado
+	 * @param from , inicio del segmento
+	 * @param to , fin del segmento (no se incluye)
+	 * @param apply , recibe cada usuario
+	 */
+	private static void parse(ByteBuffer data, int from, int to, Consumer<UserRecord> apply) {
+		ByteBuffer slice = data.duplicate();
+		slice.limit(to).position(from);
+		InputStream in = new SequenceInputStream(new SequenceInputStream(bytes("["), new BufferInputStream(slice)), bytes("]"));
+		try(JsonParser parser = FACTORY.createParser(in, StandardCharsets.UTF_8)) {
+			parser.next(); //START_ARRAY
+			while(parser.hasNext()) {
+				if(parser.next() == JsonParser.Event.START_OBJECT) {
+					apply.accept(readUser(parser));
+				}
+			}
+		}
+	}
+	/**
+	 * Lee un usuario guardado como un objeto JSON
+	 * @param json , bytes UTF-8 del objeto; no se cambia su posicion
+	 * @return UserRecord
+	 */
+	static UserRecord readUser(ByteBuffer json) {
+		try(JsonParser parser = FACTORY.createParser(new BufferInputStream(json.duplicate()), StandardCharsets.UTF_8)) {
+			if(parser.next() != JsonParser.Event.START_OBJECT) {
+				throw new IllegalStateException("El usuario no es un objeto JSON");
+			}
+			return readUser(parser);
+		}
+	}
+	/**
+	 * Lee un usuario; el parser debe estar justo despues del inicio del objeto
+	 * @param parser
+	 * @return UserRecord
+	 */
+	static UserRecord readUser(JsonParser parser) {
+		String userName = null;
+		String name = "";
+		int age = 0;
+		String password = "";
+		List<String> genres = new ArrayList<String>();
+		List<String> friends = new ArrayList<String>();
+		List<UserRecord.Message> messages = new ArrayList<UserRecord.Message>();
+		JsonParser.Event event;
+		while((event = parser.next()) != JsonParser.Event.END_OBJECT) {
+			if(event != JsonParser.Event.KEY_NAME) {
+				continue;
+			}
+			String key = parser.getString();
+			event = parser.next();
+			switch(key) {
+			case "UserName":
+				userName = parser.getString();
+				break;
+			case "Name":
+				name = parser.getString();
+				break;
+			case "Age":
+				age = event == JsonParser.Event.VALUE_NUMBER ? parser.getInt() : 0;
+				break;
+			case "Password":
+				password = parser.getString();
+				break;
+			case "MusicalGenres":
+				readStrings(parser, event, genres);
+				break;
+			case "Friends":
+				readStrings(parser, event, friends);
+				break;
+			case "Messages":
+				readMessages(parser, event, messages);
+				break;
+			default:
+				skip(parser, event);
+			}
+		}
+		if(userName == null) {
+			throw new IllegalStateException("Usuario sin UserName");
+		}
+		return new UserRecord(userName, name, age, genres, password, friends, messages);
+	}
+	/**
+	 * Lee un arreglo de textos
+	 * @param parser
+	 * @param event , evento del valor
+	 * @param list , donde se agregan los textos
+	 */
+	private static void readStrings(JsonParser parser, JsonParser.Event event, List<String> list) {
+		if(event != JsonParser.Event.START_ARRAY) {
+			skip(parser, event);
+			return;
+		}
+		while((event = parser.next()) != JsonParser.Event.END_ARRAY) {
+			if(event == JsonParser.Event.VALUE_STRING) {
+				list.add(parser.getString());
+			}else {
+				skip(parser, event);
+			}
+		}
+	}
+	/**
+	 * Lee el arreglo de mensajes
+	 * @param parser
+	 * @param event , evento del valor
+	 * @param list , donde se agregan los mensajes
+	 */
+	private static void readMessages(JsonParser parser, JsonParser.Event event, List<UserRecord.Message> list) {
+		if(event != JsonParser.Event.START_ARRAY) {
+			skip(parser, event);
+			return;
+		}
+		while((event = parser.next()) != JsonParser.Event.END_ARRAY) {
+			if(event != JsonParser.Event.START_OBJECT) {
+				skip(parser, event);
+				continue;
+			}
+			String sender = "";
+			String text = "";
+			while((event = parser.next()) != JsonParser.Event.END_OBJECT) {
+				String key = parser.getString();
+				event = parser.next();
+				if(key.equals("Emisor")) {
+					sender = parser.getString();
+				}else if(key.equals("Message")) {
+					text = parser.getString();
+				}else {
+					skip(parser, event);
+				}
+			}
+			list.add(new UserRecord.Message(sender, text));
+		}
+	}
+	/**
+	 * Salta un valor que no se usa
+	 * @param parser
+	 * @param event , evento del valor
+	 */
+	private static void skip(JsonParser parser, JsonParser.Event event) {
+		if(event == JsonParser.Event.START_ARRAY) {
+			parser.skipArray();
+		}else if(event == JsonParser.Event.START_OBJECT) {
+			parser.skipObject();
+		}
+	}
+	/**
+	 * Flujo con un texto fijo
+	 * @param text
+	 * @return InputStream
+	 */
+	private static InputStream bytes(String text) {
+		return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+	}
+	/**
+	 * Flujo de lectura sobre un ByteBuffer, sin copiarlo
+	 */
+	private static class BufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		private BufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if(!buffer.hasRemaining()) {
+				return -1;
+			}
+			len = Math.min(len, buffer.remaining());
+			buffer.get(b, off, len);
+			return len;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+}
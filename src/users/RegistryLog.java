@@ -0,0 +1,229 @@
+package users;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+/**
+ * Bitacora (write-ahead log) de los cambios del registro de usuarios. Cada cambio se agrega al final del archivo
+ * como una linea con el registro completo del usuario, asi un cambio cuesta una linea y no reescribir todo el
+ * registro. Un solo hilo escribe: junta todos los cambios que esten esperando, los escribe de una vez y hace un
+ * solo fsync para todos (group commit); cada cambio se confirma cuando ya esta en disco.
+ * Cuando la bitacora crece, el registro completo se guarda como una generacion nueva del snapshot
+ * (RegistrySnapshot) y la bitacora se vacia; si no se puede guardar, la bitacora queda como estaba y no se vuelve a
+ * intentar hasta que crezca otro limite. Al iniciar se carga el snapshot y luego se vuelven a aplicar las lineas de la bitacora; como
+ * cada linea trae el usuario completo, aplicar una linea que el snapshot ya tenia no cambia nada.
+ * @author Sebastian Alba
+ * @author David Pereira
+ * @author Randall Mendez
+ *
+ */
+class RegistryLog {
+	private final File snapshot;
+	private long generation; //Solo la usa el hilo que escribe
+	private final FileChannel channel;
+	private final LinkedBlockingQueue<Entry> pending = new LinkedBlockingQueue<Entry>();
+	private final long limit;
+	private long threshold; //Bytes a partir de los cuales se pide compactar; solo lo usa el hilo que escribe
+	private final Runnable onFull;
+	private volatile long size;
+	private boolean compactRequested; //Solo lo usa el hilo que escribe
+	/**
+	 * Cambio o compactacion pendiente de escribir
+	 */
+	private static class Entry {
+		private final byte[] record;
+		private final String[] names;
+		private final ByteBuffer[] users;
+		private final CompletableFuture<File> done = new CompletableFuture<File>();
+
+		private Entry(byte[] record, String[] names, ByteBuffer[] users) {
+			this.record = record;
+			this.names = names;
+			this.users = users;
+		}
+	}
+	/**
+	 * Constructor de la clase, abre la bitacora para agregar cambios e inicia el hilo que escribe
+	 * @param file , archivo de la bitacora
+	 * @param snapshot , archivo de registro, base de los nombres de las generaciones del snapshot
+	 * @param generation , generacion del snapshot en uso
+	 * @param limit , bytes de bitacora a partir de los cuales se pide compactar
+	 * @param onFull , se llama cuando la bitacora pasa el limite
+	 * @throws IOException
+	 */
+	RegistryLog(File file, File snapshot, long generation, long limit, Runnable onFull) throws IOException {
+		this.snapshot = snapshot;
+		this.generation = generation;
+		this.limit = limit;
+		this.threshold = limit;
+		this.onFull = onFull;
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		this.size = channel.size();
+		Thread writer = new Thread(this::write, "bitacora-usuarios");
+		writer.setDaemon(true);
+		writer.start();
+	}
+	/**
+	 * Lee las lineas de una bitacora, en el orden en que se escribieron. Una ultima linea incompleta (el servidor
+	 * se cayo mientras la escribia) se descarta, porque ese cambio nunca se confirmo.
+	 * @param file
+	 * @param apply , recibe cada linea
+	 * @return cantidad de lineas aplicadas
+	 * @throws IOException
+	 */
+	static int replay(File file, Consumer<String> apply) throws IOException {
+		if(!file.exists()) {
+			return 0;
+		}
+		int count = 0;
+		try(BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+			String line;
+			while((line = reader.readLine()) != null) {
+				if(line.isEmpty()) {
+					continue;
+				}
+				try {
+					apply.accept(line);
+					count++;
+				}catch(RuntimeException ex) {
+					System.out.println("Se descarta una linea incompleta de la bitacora");
+				}
+			}
+		}
+		return count;
+	}
+	/**
+	 * Agrega un cambio a la bitacora
+	 * @param record , registro completo del usuario
+	 * @return se completa (con null) cuando el cambio ya esta en disco
+	 */
+	CompletableFuture<File> append(String record) {
+		Entry entry = new Entry((record + "\n").getBytes(StandardCharsets.UTF_8), null, null);
+		pending.add(entry);
+		return entry.done;
+	}
+	/**
+	 * Guarda un snapshot y vacia la bitacora. Debe llamarse con el registro bloqueado, para que el snapshot
+	 * tenga exactamente los cambios que se agregaron antes que el.
+	 * @param names , todos los nombres de usuario, ordenados sin distinguir mayusculas
+	 * @param users , registro JSON en UTF-8 de cada usuario, en el mismo orden
+	 * @return se completa con el archivo del snapshot nuevo cuando ya esta en disco y la bitacora vacia
+	 */
+	CompletableFuture<File> compact(String[] names, ByteBuffer[] users) {
+		Entry entry = new Entry(null, names, users);
+		pending.add(entry);
+		return entry.done;
+	}
+	/**
+	 * Bytes que tiene la bitacora
+	 * @return long
+	 */
+	long size() {
+		return size;
+	}
+	/**
+	 * Ciclo del hilo que escribe: espera cambios, escribe juntos todos los que haya y los confirma con un fsync
+	 */
+	private void write() {
+		List<Entry> batch = new ArrayList<Entry>();
+		while(true) {
+			try {
+				batch.add(pending.take());
+			}catch(InterruptedException ex) {
+				return;
+			}
+			pending.drainTo(batch);
+			int start = 0;
+			for(int i = 0; i <= batch.size(); i++) {
+				if(i == batch.size() || batch.get(i).users != null) { //Las compactaciones cortan el grupo
+					commit(batch.subList(start, i));
+					if(i < batch.size()) {
+						compactNow(batch.get(i));
+					}
+					start = i + 1;
+				}
+			}
+			batch.clear();
+			if(size > threshold && !compactRequested) {
+				compactRequested = true;
+				onFull.run();
+			}
+		}
+	}
+	/**
+	 * Escribe un grupo de cambios con un solo fsync y los confirma
+	 * @param group
+	 */
+	private void commit(List<Entry> group) {
+		if(group.isEmpty()) {
+			return;
+		}
+		int length = 0;
+		for(Entry entry : group) {
+			length += entry.record.length;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		for(Entry entry : group) {
+			buffer.put(entry.record);
+		}
+		buffer.flip();
+		try {
+			while(buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(false);
+			size += length;
+			for(Entry entry : group) {
+				entry.done.complete(null);
+			}
+		}catch(IOException ex) {
+			for(Entry entry : group) {
+				entry.done.completeExceptionally(ex);
+			}
+		}
+	}
+	/**
+	 * Escribe el snapshot como la generacion siguiente: primero en un archivo temporal, que se pasa a disco y se
+	 * renombra, y solo despues vacia la bitacora. Asi una caida en medio deja la generacion anterior con la
+	 * bitacora completa o la nueva con una bitacora que ya no le cambia nada. Ningun archivo se reemplaza, porque
+	 * el snapshot en uso esta mapeado.
+	 * @param entry
+	 */
+	private void compactNow(Entry entry) {
+		File target = RegistrySnapshot.generation(snapshot, generation + 1);
+		File temp = new File(target.getPath() + ".tmp");
+		try {
+			try(FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				RegistrySnapshot.write(out, entry.names, entry.users);
+				out.force(true);
+			}
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			generation++;
+			channel.truncate(0);
+			channel.force(true);
+			size = 0;
+			threshold = limit;
+			entry.done.complete(target);
+		}catch(IOException ex) {
+			System.out.println("No se pudo compactar la bitacora de usuarios: " + ex.getMessage());
+			temp.delete();
+			threshold = size + limit; //La bitacora sigue completa; se reintenta cuando crezca otro limite
+			entry.done.completeExceptionally(ex);
+		}finally {
+			compactRequested = false;
+		}
+	}
+}
@@ -0,0 +1,299 @@
+package users;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+/**
+ * Snapshot binario del registro de usuarios, leido con el archivo mapeado en memoria. El formato es:
+ * <ul>
+ * <li>Cabecera de CABECERA bytes: entero MAGICO, entero VERSION, entero cantidad de usuarios y un entero
+ * reservado (0)</li>
+ * <li>Tabla de ENTRADA bytes por usuario, ordenada por nombre sin mayusculas: posicion y largo del nombre, y
+ * posicion y largo del registro</li>
+ * <li>Los nombres de usuario en UTF-8, uno tras otro</li>
+ * <li>Los registros, cada uno como un objeto JSON en UTF-8</li>
+ * </ul>
+ * Al abrirlo solo se lee la cabecera; cada registro se convierte cuando se pide, asi el sistema operativo solo
+ * carga del disco las paginas que se usan. Como la tabla es de ancho fijo y esta ordenada, un usuario se busca
+ * con una busqueda binaria sin ningun indice en memoria.
+ * Un snapshot mapeado no se reemplaza: en Windows no se puede mover otro archivo encima ni borrarlo mientras siga
+ * mapeado. Cada compactacion escribe una generacion nueva: la 0 es el archivo de registro y la n es el mismo
+ * nombre con ".n" al final; al iniciar se abre la mayor.
+ * @author Sebastian Alba
+ * @author David Pereira
+ * @author Randall Mendez
+ *
+ */
+class RegistrySnapshot {
+	/**
+	 * Primeros bytes del archivo ("ODYU")
+	 */
+	static final int MAGICO = 0x4F445955;
+	/**
+	 * Version del formato que se escribe y la unica que se sabe leer
+	 */
+	static final int VERSION = 1;
+	/**
+	 * Bytes de la cabecera
+	 */
+	static final int CABECERA = 16;
+	/**
+	 * Bytes de cada entrada de la tabla
+	 */
+	static final int ENTRADA = 16;
+	private static final int BLOQUE = 64 * 1024;
+	private final ByteBuffer data;
+	private final int count;
+	/**
+	 * Constructor de la clase
+	 * @param data , archivo mapeado
+	 * @param count , cantidad de usuarios
+	 */
+	private RegistrySnapshot(ByteBuffer data, int count) {
+		this.data = data;
+		this.count = count;
+	}
+	/**
+	 * Indica si un archivo es un snapshot binario (y no, por ejemplo, el arreglo JSON de antes)
+	 * @param file
+	 * @return boolean
+	 * @throws IOException
+	 */
+	static boolean isSnapshot(File file) throws IOException {
+		if(!file.exists() || file.length() < CABECERA) {
+			return false;
+		}
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(4);
+			while(header.hasRemaining() && channel.read(header) >= 0) {
+				//Se lee hasta tener los 4 bytes
+			}
+			return header.getInt(0) == MAGICO;
+		}
+	}
+	/**
+	 * Archivo de una generacion del snapshot
+	 * @param base , archivo de registro
+	 * @param generation
+	 * @return File
+	 */
+	static File generation(File base, long generation) {
+		return generation == 0 ? base : new File(base.getPath() + "." + generation);
+	}
+	/**
+	 * Busca la generacion mas nueva que hay en disco
+	 * @param base , archivo de registro
+	 * @return numero de la generacion, 0 si solo esta (o ni siquiera esta) el archivo de registro
+	 */
+	static long latest(File base) {
+		long latest = 0;
+		for(long generation : generations(base)) {
+			latest = Math.max(latest, generation);
+		}
+		return latest;
+	}
+	/**
+	 * Borra las generaciones anteriores a una. Las que no se pueden borrar (en Windows, porque siguen mapeadas
+	 * hasta que el recolector de basura libera el mapeo) quedan para la siguiente vez.
+	 * @param base , archivo de registro
+	 * @param current , generacion en uso
+	 */
+	static void deleteOlder(File base, long current) {
+		for(long generation : generations(base)) {
+			if(generation < current) {
+				generation(base, generation).delete();
+			}
+		}
+	}
+	/**
+	 * Generaciones que hay en disco
+	 * @param base , archivo de registro
+	 * @return numeros de generacion, sin orden
+	 */
+	private static List<Long> generations(File base) {
+		List<Long> generations = new ArrayList<Long>();
+		if(base.exists()) {
+			generations.add(0L);
+		}
+		File folder = base.getAbsoluteFile().getParentFile();
+		String prefix = base.getName() + ".";
+		String[] files = folder == null ? null : folder.list();
+		if(files == null) {
+			return generations;
+		}
+		for(String name : files) {
+			if(name.startsWith(prefix) && name.length() > prefix.length() && name.substring(prefix.length()).matches("\\d{1,18}")) {
+				generations.add(Long.parseLong(name.substring(prefix.length())));
+			}
+		}
+		return generations;
+	}
+	/**
+	 * Mapea un snapshot en memoria
+	 * @param file
+	 * @return RegistrySnapshot
+	 * @throws IOException si no es un snapshot, es de otra version o esta incompleto
+	 */
+	static RegistrySnapshot open(File file) throws IOException {
+		if(file.length() > Integer.MAX_VALUE) {
+			throw new IOException("El registro de usuarios es demasiado grande para mapearlo: " + file.length() + " bytes");
+		}
+		MappedByteBuffer data;
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if(data.limit() < CABECERA || data.getInt(0) != MAGICO) {
+			throw new IOException(file + " no es un registro de usuarios");
+		}
+		if(data.getInt(4) != VERSION) {
+			throw new IOException(file + " tiene la version " + data.getInt(4) + " del registro de usuarios, se esperaba la " + VERSION);
+		}
+		int count = data.getInt(8);
+		if(count < 0 || CABECERA + (long) count * ENTRADA > data.limit()) {
+			throw new IOException(file + " esta incompleto");
+		}
+		return new RegistrySnapshot(data, count);
+	}
+	/**
+	 * Cantidad de usuarios
+	 * @return int
+	 */
+	int size() {
+		return count;
+	}
+	/**
+	 * Nombre de un usuario, como se registro
+	 * @param index , posicion en la tabla
+	 * @return string
+	 */
+	String name(int index) {
+		int entry = CABECERA + index * ENTRADA;
+		return text(data.getInt(entry), data.getInt(entry + 4));
+	}
+	/**
+	 * Busca un usuario en la tabla
+	 * @param key , nombre de usuario sin mayusculas
+	 * @return posicion en la tabla, o -1 si no esta
+	 */
+	int find(String key) {
+		int low = 0;
+		int high = count - 1;
+		while(low <= high) {
+			int middle = (low + high) >>> 1;
+			int comparison = UserRecord.key(name(middle)).compareTo(key);
+			if(comparison == 0) {
+				return middle;
+			}
+			if(comparison < 0) {
+				low = middle + 1;
+			}else {
+				high = middle - 1;
+			}
+		}
+		return -1;
+	}
+	/**
+	 * Convierte el registro de un usuario
+	 * @param index , posicion en la tabla
+	 * @return UserRecord
+	 */
+	UserRecord get(int index) {
+		return RegistryLoader.readUser(record(index));
+	}
+	/**
+	 * Bytes del registro de un usuario, sin convertir, para copiarlo a otro snapshot
+	 * @param index , posicion en la tabla
+	 * @return JSON en UTF-8
+	 */
+	ByteBuffer record(int index) {
+		int entry = CABECERA + index * ENTRADA;
+		return slice(data.getInt(entry + 8), data.getInt(entry + 12));
+	}
+
+	private ByteBuffer slice(int position, int length) {
+		ByteBuffer slice = data.duplicate();
+		slice.limit(position + length).position(position);
+		return slice;
+	}
+
+	private String text(int position, int length) {
+		return StandardCharsets.UTF_8.decode(slice(position, length)).toString();
+	}
+	/**
+	 * Escribe un snapshot
+	 * @param out , archivo donde se escribe, vacio
+	 * @param names , nombres de usuario, ordenados sin distinguir mayusculas
+	 * @param records , registro JSON en UTF-8 de cada usuario; no se cambia su posicion
+	 * @throws IOException
+	 */
+	static void write(FileChannel out, String[] names, ByteBuffer[] records) throws IOException {
+		byte[][] nameBytes = new byte[names.length][];
+		long position = CABECERA + (long) names.length * ENTRADA;
+		for(int i = 0; i < names.length; i++) {
+			nameBytes[i] = names[i].getBytes(StandardCharsets.UTF_8);
+			position += nameBytes[i].length;
+		}
+		long recordPosition = position;
+		for(ByteBuffer record : records) {
+			position += record.remaining();
+		}
+		if(position > Integer.MAX_VALUE) {
+			throw new IOException("El registro de usuarios no cabe en un snapshot: " + position + " bytes");
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(BLOQUE);
+		buffer.putInt(MAGICO).putInt(VERSION).putInt(names.length).putInt(0);
+		int namePosition = CABECERA + names.length * ENTRADA;
+		for(int i = 0; i < names.length; i++) {
+			if(buffer.remaining() < ENTRADA) {
+				drain(out, buffer);
+			}
+			buffer.putInt(namePosition).putInt(nameBytes[i].length).putInt((int) recordPosition).putInt(records[i].remaining());
+			namePosition += nameBytes[i].length;
+			recordPosition += records[i].remaining();
+		}
+		for(byte[] name : nameBytes) {
+			put(out, buffer, ByteBuffer.wrap(name));
+		}
+		for(ByteBuffer record : records) {
+			put(out, buffer, record.duplicate());
+		}
+		drain(out, buffer);
+	}
+	/**
+	 * Copia bytes al bloque de escritura, escribiendolo cada vez que se llena
+	 * @param out
+	 * @param buffer , bloque de escritura
+	 * @param src
+	 * @throws IOException
+	 */
+	private static void put(FileChannel out, ByteBuffer buffer, ByteBuffer src) throws IOException {
+		while(src.hasRemaining()) {
+			if(!buffer.hasRemaining()) {
+				drain(out, buffer);
+			}
+			ByteBuffer part = src.duplicate();
+			part.limit(part.position() + Math.min(buffer.remaining(), src.remaining()));
+			src.position(part.limit());
+			buffer.put(part);
+		}
+	}
+	/**
+	 * Escribe el bloque de escritura y lo deja vacio
+	 * @param out
+	 * @param buffer
+	 * @throws IOException
+	 */
+	private static void drain(FileChannel out, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+		buffer.clear();
+	}
+}
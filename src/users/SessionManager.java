@@ -0,0 +1,124 @@
+package users;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+/**
+ * Sesiones de los usuarios que ya iniciaron sesion. Al iniciar sesion se genera un token aleatorio y las
+ * operaciones siguientes se validan con una sola busqueda en una tabla concurrente, sin volver a codificar la
+ * contraseña ni consultar el registro. Cada uso renueva la sesion; si pasa DURACION milisegundos sin usarse
+ * expira, y un hilo aparte borra cada INTERVALO_LIMPIEZA milisegundos las que ya expiraron.
+ * @author Sebastian Alba
+ * @author David Pereira
+ * @author Randall Mendez
+ *
+ */
+public class SessionManager {
+	/**
+	 * Milisegundos que dura una sesion sin usarse
+	 */
+	public static final long DURACION = 30 * 60 * 1000;
+	/**
+	 * Milisegundos entre limpiezas de sesiones expiradas
+	 */
+	public static final long INTERVALO_LIMPIEZA = 60 * 1000;
+	/**
+	 * Bytes aleatorios de cada token
+	 */
+	public static final int BYTES_TOKEN = 18;
+	private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+	private final SecureRandom random = new SecureRandom();
+	private final long duration;
+	/**
+	 * Sesion abierta de un usuario
+	 */
+	private static class Session {
+		private final String userName;
+		private volatile long expires;
+
+		private Session(String userName, long expires) {
+			this.userName = userName;
+			this.expires = expires;
+		}
+	}
+	/**
+	 * Constructor de la clase, con la duracion de siempre
+	 */
+	public SessionManager() {
+		this(DURACION);
+	}
+	/**
+	 * Constructor de la clase
+	 * @param duration , milisegundos que dura una sesion sin usarse
+	 */
+	public SessionManager(long duration) {
+		this.duration = duration;
+		ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "limpiar-sesiones");
+			thread.setDaemon(true);
+			return thread;
+		});
+		cleaner.scheduleWithFixedDelay(this::purge, INTERVALO_LIMPIEZA, INTERVALO_LIMPIEZA, TimeUnit.MILLISECONDS);
+	}
+	/**
+	 * Abre una sesion para un usuario que ya valido su contraseña
+	 * @param userName
+	 * @return token de la sesion
+	 */
+	public String open(String userName) {
+		byte[] bytes = new byte[BYTES_TOKEN];
+		String token;
+		do {
+			random.nextBytes(bytes);
+			token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes); //Sin "/", que separa los campos del protocolo
+		}while(sessions.putIfAbsent(token, new Session(userName, System.currentTimeMillis() + duration)) != null);
+		return token;
+	}
+	/**
+	 * Valida un token y renueva su sesion
+	 * @param token
+	 * @return el usuario de la sesion, o null si el token no existe o expiro
+	 */
+	public String validate(String token) {
+		if(token == null) {
+			return null;
+		}
+		Session session = sessions.get(token);
+		if(session == null) {
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		if(session.expires < now) {
+			sessions.remove(token, session);
+			return null;
+		}
+		session.expires = now + duration;
+		return session.userName;
+	}
+	/**
+	 * Cierra una sesion
+	 * @param token
+	 */
+	public void close(String token) {
+		if(token != null) {
+			sessions.remove(token);
+		}
+	}
+	/**
+	 * Cantidad de sesiones abiertas (incluye las expiradas que aun no se han limpiado)
+	 * @return int
+	 */
+	public int size() {
+		return sessions.size();
+	}
+	/**
+	 * Borra las sesiones expiradas
+	 */
+	private void purge() {
+		long now = System.currentTimeMillis();
+		sessions.values().removeIf(session -> session.expires < now);
+	}
+}
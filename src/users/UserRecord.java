@@ -0,0 +1,232 @@
+package users;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+/**
+ * Registro de un usuario ya leido, como lo guarda UserRegistry en memoria. Es inmutable: un cambio (por ejemplo
+ * agregar un amigo) crea un registro nuevo, asi quien ya tenga el anterior lo puede seguir leyendo sin bloqueos.
+ * El JSON solo se usa para guardarlo en disco.
+ * @author Sebastian Alba
+ * @author David Pereira
+ * @author Randall Mendez
+ *
+ */
+public final class UserRecord {
+	private final String userName;
+	private final String name;
+	private final int age;
+	private final String password;
+	private final Set<String> genres;
+	private final Set<String> friends;
+	private final Set<String> friendKeys; //Nombres de los amigos sin mayusculas, para buscar en O(1)
+	private final List<Message> messages;
+	/**
+	 * Mensaje de recomendacion guardado en el registro, de antes de los buzones
+	 */
+	public static final class Message {
+		private final String sender;
+		private final String text;
+		/**
+		 * Constructor de la clase
+		 * @param sender , usuario que envia
+		 * @param text
+		 */
+		public Message(String sender, String text) {
+			this.sender = sender;
+			this.text = text;
+		}
+		/**
+		 * Obtiene el usuario que envio el mensaje
+		 * @return string
+		 */
+		public String getSender() {
+			return sender;
+		}
+		/**
+		 * Obtiene el texto del mensaje
+		 * @return string
+		 */
+		public String getText() {
+			return text;
+		}
+	}
+	/**
+	 * Constructor de la clase
+	 * @param userName
+	 * @param name
+	 * @param age
+	 * @param genres
+	 * @param password , contraseña ya codificada
+	 * @param friends
+	 * @param messages
+	 */
+	public UserRecord(String userName, String name, int age, Collection<String> genres, String password, Collection<String> friends, List<Message> messages) {
+		this.userName = userName;
+		this.name = name;
+		this.age = age;
+		this.password = password;
+		this.genres = Collections.unmodifiableSet(new LinkedHashSet<String>(genres));
+		Set<String> friendSet = new LinkedHashSet<String>();
+		Set<String> keys = new HashSet<String>();
+		for(String friend : friends) {
+			if(keys.add(key(friend))) {
+				friendSet.add(friend);
+			}
+		}
+		this.friends = Collections.unmodifiableSet(friendSet);
+		this.friendKeys = keys;
+		this.messages = Collections.unmodifiableList(new ArrayList<Message>(messages));
+	}
+	/**
+	 * Llave con la que se compara un nombre de usuario, sin distinguir mayusculas
+	 * @param userName
+	 * @return string
+	 */
+	public static String key(String userName) {
+		return userName.toLowerCase(Locale.ROOT);
+	}
+	/**
+	 * Lee un registro guardado en JSON
+	 * @param obj
+	 * @return UserRecord
+	 */
+	public static UserRecord fromJson(JsonObject obj) {
+		List<Message> messages = new ArrayList<Message>();
+		JsonArray array = obj.getJsonArray("Messages");
+		if(array != null) {
+			for(int j = 0; j < array.size(); j++) {
+				JsonObject msg = array.getJsonObject(j);
+				messages.add(new Message(msg.getString("Emisor"), msg.getString("Message")));
+			}
+		}
+		return new UserRecord(obj.getString("UserName"), obj.getString("Name", ""), obj.getInt("Age", 0), strings(obj.getJsonArray("MusicalGenres")),
+				obj.getString("Password", ""), strings(obj.getJsonArray("Friends")), messages);
+	}
+	/**
+	 * Convierte un arreglo JSON de textos en una lista
+	 * @param array
+	 * @return lista
+	 */
+	private static List<String> strings(JsonArray array) {
+		List<String> list = new ArrayList<String>();
+		if(array != null) {
+			for(int i = 0; i < array.size(); i++) {
+				if(array.get(i).getValueType() == JsonValue.ValueType.STRING) {
+					list.add(array.getString(i));
+				}
+			}
+		}
+		return list;
+	}
+	/**
+	 * Convierte el registro al JSON con el que se guarda en disco
+	 * @return JsonObject
+	 */
+	public JsonObject toJson() {
+		JsonArrayBuilder genresBuilder = Json.createArrayBuilder();
+		for(String genre : genres) {
+			genresBuilder.add(genre);
+		}
+		JsonArrayBuilder friendsBuilder = Json.createArrayBuilder();
+		for(String friend : friends) {
+			friendsBuilder.add(friend);
+		}
+		JsonArrayBuilder messagesBuilder = Json.createArrayBuilder();
+		for(Message message : messages) {
+			messagesBuilder.add(Json.createObjectBuilder().add("Emisor", message.getSender()).add("Message", message.getText()));
+		}
+		return Json.createObjectBuilder().add("UserName", userName).add("Name", name).add("Age", age).add("MusicalGenres", genresBuilder)
+				.add("Password", password).add("Friends", friendsBuilder).add("Messages", messagesBuilder).build();
+	}
+	/**
+	 * Crea un registro igual a este con un amigo mas
+	 * @param friend
+	 * @return UserRecord
+	 */
+	public UserRecord withFriend(String friend) {
+		List<String> list = new ArrayList<String>(friends);
+		list.add(friend);
+		return new UserRecord(userName, name, age, genres, password, list, messages);
+	}
+	/**
+	 * Crea un registro igual a este sin mensajes, una vez que se pasaron al buzon del usuario
+	 * @return UserRecord
+	 */
+	public UserRecord withoutMessages() {
+		return new UserRecord(userName, name, age, genres, password, friends, Collections.<Message>emptyList());
+	}
+	/**
+	 * Indica si el usuario ya tiene agregado al amigo
+	 * @param friend
+	 * @return boolean
+	 */
+	public boolean hasFriend(String friend) {
+		return friendKeys.contains(key(friend));
+	}
+	/**
+	 * Obtiene el nombre de usuario
+	 * @return string
+	 */
+	public String getUserName() {
+		return userName;
+	}
+	/**
+	 * Obtiene el nombre
+	 * @return string
+	 */
+	public String getName() {
+		return name;
+	}
+	/**
+	 * Obtiene la edad
+	 * @return int
+	 */
+	public int getAge() {
+		return age;
+	}
+	/**
+	 * Obtiene la contraseña codificada
+	 * @return string
+	 */
+	public String getPassword() {
+		return password;
+	}
+	/**
+	 * Obtiene los generos musicales favoritos
+	 * @return set
+	 */
+	public Set<String> getGenres() {
+		return genres;
+	}
+	/**
+	 * Obtiene los amigos, en el orden en que se agregaron
+	 * @return set
+	 */
+	public Set<String> getFriends() {
+		return friends;
+	}
+	/**
+	 * Obtiene los mensajes que el usuario tenia guardados en el registro, en el orden en que llegaron. Los mensajes
+	 * nuevos se guardan en su buzon (social.MailboxStore); estos solo se leen para pasarlos al buzon.
+	 * @return lista
+	 */
+	public List<Message> getMessages() {
+		return messages;
+	}
+	@Override
+	public String toString() {
+		return toJson().toString();
+	}
+}
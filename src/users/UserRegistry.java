@@ -0,0 +1,474 @@
+package users;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import javax.json.Json;
+/**
+ * Registro de usuarios compartido por todo el servidor. El archivo de registro es un snapshot binario
+ * (RegistrySnapshot) que se mapea en memoria al iniciar: solo se leen los nombres, que un skip list concurrente
+ * guarda en orden para listarlos, y cada usuario se convierte a UserRecord la primera vez que se pide. Los
+ * usuarios ya convertidos o cambiados quedan en una tabla concurrente por nombre de usuario (sin distinguir
+ * mayusculas). Los registros son inmutables,
+ * asi que las lecturas no toman ningun bloqueo. Cada cambio bloquea solo la franja (stripe) de su usuario, de modo
+ * que cambios de usuarios distintos no se esperan entre si, y se agrega a la bitacora (RegistryLog) como JSON,
+ * que lo confirma en disco antes de que el metodo retorne. El JSON solo se usa en disco.
+ * Un filtro de Bloom, armado al cargar, descarta los nombres que seguro no estan registrados sin buscarlos en la
+ * tabla; cuando se llena se arma uno del doble de usuarios.
+ * El snapshot se escribe solo al compactar la bitacora, cuando pasa de LIMITE_BITACORA bytes o cada
+ * INTERVALO_COMPACTAR milisegundos si tiene cambios. Cada compactacion escribe una generacion nueva del archivo de
+ * registro (ver RegistrySnapshot), se mapea en lugar de la anterior y se borran las viejas que se puedan.
+ * @author Sebastian Alba
+ * @author David Pereira
+ * @author Randall Mendez
+ *
+ */
+public class UserRegistry {
+	/**
+	 * Archivo de registro de usuarios
+	 */
+	public static final String ARCHIVO = "usuarios.dat";
+	/**
+	 * Registro de usuarios en JSON de las versiones anteriores; si no hay snapshot se carga y se pasa al snapshot
+	 */
+	public static final String ARCHIVO_JSON = "usuarios.json";
+	/**
+	 * Bitacora de cambios del registro
+	 */
+	public static final String BITACORA = "usuarios.log";
+	/**
+	 * Bytes de bitacora a partir de los cuales se compacta
+	 */
+	public static final long LIMITE_BITACORA = 4 * 1024 * 1024;
+	/**
+	 * Milisegundos entre compactaciones periodicas
+	 */
+	public static final long INTERVALO_COMPACTAR = 10 * 60 * 1000;
+	/**
+	 * Cantidad de franjas de bloqueo para los cambios (potencia de 2)
+	 */
+	public static final int FRANJAS = 64;
+	/**
+	 * Capacidad minima del filtro de Bloom de nombres
+	 */
+	public static final int CAPACIDAD_FILTRO = 1024;
+	private final ConcurrentHashMap<String, UserRecord> records = new ConcurrentHashMap<String, UserRecord>(); //Convertidos del snapshot o cambiados despues
+	private final ConcurrentSkipListMap<String, String> names = new ConcurrentSkipListMap<String, String>(); //Llave sin mayusculas, nombre como se registro
+	private final Object[] stripes = new Object[FRANJAS];
+	private final ReentrantReadWriteLock snapshotLock = new ReentrantReadWriteLock(); //Los cambios toman la lectura; compactar y agrandar el filtro, la escritura
+	private final SessionManager sessions = new SessionManager();
+	private volatile BloomFilter filter;
+	private final List<Consumer<UserRecord>> listeners = new CopyOnWriteArrayList<Consumer<UserRecord>>();
+	private final File file;
+	private volatile RegistrySnapshot snapshot; //null si el registro se cargo de JSON y aun no se compacta
+	private final RegistryLog log;
+	private final ScheduledExecutorService compactor;
+	/**
+	 * Constructor de la clase, carga el registro de los archivos de siempre
+	 * @throws IOException
+	 */
+	public UserRegistry() throws IOException {
+		this(new File(ARCHIVO), new File(BITACORA));
+	}
+	/**
+	 * Constructor de la clase: mapea la generacion mas nueva del snapshot y vuelve a aplicar los cambios de la
+	 * bitacora. Si el archivo de registro no existe, o es un arreglo JSON de las versiones anteriores, se carga el JSON (el archivo o
+	 * ARCHIVO_JSON en la misma carpeta) y se guarda de una vez como snapshot; el JSON no se borra.
+	 * @param file , archivo de registro (snapshot)
+	 * @param logFile , bitacora de cambios
+	 * @throws IOException si el snapshot es de otra version o esta incompleto
+	 */
+	public UserRegistry(File file, File logFile) throws IOException {
+		this.file = file;
+		for(int i = 0; i < stripes.length; i++) {
+			stripes[i] = new Object();
+		}
+		long generation = RegistrySnapshot.latest(file);
+		File current = RegistrySnapshot.generation(file, generation);
+		File source = current.exists() ? current : new File(file.getAbsoluteFile().getParentFile(), ARCHIVO_JSON);
+		this.snapshot = RegistrySnapshot.isSnapshot(source) ? RegistrySnapshot.open(source) : null;
+		boolean migrate = snapshot == null && load(source);
+		if(snapshot != null) {
+			RegistrySnapshot.deleteOlder(file, generation); //Las que una ejecucion anterior no pudo borrar
+			for(int i = 0; i < snapshot.size(); i++) {
+				String name = snapshot.name(i);
+				names.put(UserRecord.key(name), name);
+			}
+		}
+		int replayed = RegistryLog.replay(logFile, line -> apply(UserRecord.fromJson(Json.createReader(new StringReader(line)).readObject())));
+		if(replayed > 0) {
+			System.out.println("Se aplicaron " + replayed + " cambios de la bitacora de usuarios");
+		}
+		this.filter = buildFilter();
+		this.log = new RegistryLog(logFile, file, generation, LIMITE_BITACORA, this::compactInBackground);
+		this.compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "compactar-usuarios");
+			thread.setDaemon(true);
+			return thread;
+		});
+		if(migrate) {
+			await(compact());
+			System.out.println("Se guardo el registro de usuarios de " + source + " como snapshot");
+		}
+		compactor.scheduleWithFixedDelay(this::compactInBackground, INTERVALO_COMPACTAR, INTERVALO_COMPACTAR, TimeUnit.MILLISECONDS);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				flush();
+			}catch(IOException ex) {
+				ex.printStackTrace();
+			}
+		}));
+	}
+	/**
+	 * Carga los usuarios de un registro en JSON con RegistryLoader, que los lee en streaming y en paralelo sin
+	 * armar el arreglo JSON completo. Si un usuario esta repetido queda el primero.
+	 * @param json , archivo con un arreglo JSON de usuarios
+	 * @return true si se cargo el archivo
+	 */
+	private boolean load(File json) {
+		if(!json.exists()) {
+			return false;
+		}
+		try {
+			RegistryLoader.load(json, user -> {
+				String key = UserRecord.key(user.getUserName());
+				if(records.putIfAbsent(key, user) == null) {
+					names.put(key, user.getUserName());
+				}
+			});
+			return true;
+		}catch(Exception ex) { //Archivo vacio o danado: se inicia con el registro vacio
+			System.out.println("No se pudo cargar el registro de usuarios: " + ex.getMessage());
+			return false;
+		}
+	}
+	/**
+	 * Obtiene el registro de un usuario, convirtiendolo del snapshot si es la primera vez que se pide
+	 * @param key , nombre de usuario sin mayusculas
+	 * @return el usuario, o null si no existe
+	 */
+	private UserRecord record(String key) {
+		UserRecord user = records.get(key);
+		RegistrySnapshot mapped = snapshot;
+		if(user != null || mapped == null) {
+			return user;
+		}
+		int index = mapped.find(key);
+		if(index < 0) {
+			return null;
+		}
+		UserRecord stored = mapped.get(index);
+		UserRecord current = records.putIfAbsent(key, stored); //Si otro hilo ya lo convirtio o lo cambio, queda el suyo
+		return current != null ? current : stored;
+	}
+	/**
+	 * Bloqueo de la franja a la que pertenece un usuario
+	 * @param key , nombre de usuario sin mayusculas
+	 * @return Object
+	 */
+	private Object stripe(String key) {
+		int hash = key.hashCode();
+		return stripes[(hash ^ (hash >>> 16)) & (FRANJAS - 1)];
+	}
+	/**
+	 * Indica si el usuario esta registrado
+	 * @param userName
+	 * @return boolean
+	 */
+	public boolean exists(String userName) {
+		String key = UserRecord.key(userName);
+		return filter.mightContain(key) && names.containsKey(key);
+	}
+	/**
+	 * Obtiene el registro de un usuario
+	 * @param userName
+	 * @return el usuario, o null si no existe
+	 */
+	public UserRecord getUser(String userName) {
+		String key = UserRecord.key(userName);
+		return filter.mightContain(key) ? record(key) : null;
+	}
+	/**
+	 * Obtiene todos los registros de usuario, en orden. Recorrerla convierte del snapshot a los usuarios que aun no
+	 * se habian pedido. La vista no se bloquea: los cambios que ocurran mientras se recorre pueden o no aparecer.
+	 * @return coleccion
+	 */
+	public Collection<UserRecord> getUsers() {
+		return new AbstractCollection<UserRecord>() {
+			@Override
+			public Iterator<UserRecord> iterator() {
+				Iterator<String> keys = names.keySet().iterator();
+				return new Iterator<UserRecord>() {
+					@Override
+					public boolean hasNext() {
+						return keys.hasNext();
+					}
+
+					@Override
+					public UserRecord next() {
+						return record(keys.next());
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return names.size();
+			}
+		};
+	}
+	/**
+	 * Registra a quien se debe avisar de cada usuario nuevo o cambiado. Se le avisa con el bloqueo del usuario
+	 * tomado, asi los cambios de un mismo usuario le llegan en orden; no debe tardar ni cambiar el registro.
+	 * @param listener , recibe el registro nuevo
+	 */
+	public void addListener(Consumer<UserRecord> listener) {
+		listeners.add(listener);
+	}
+	/**
+	 * Avisa de un cambio a los interesados
+	 * @param user
+	 */
+	private void changed(UserRecord user) {
+		for(Consumer<UserRecord> listener : listeners) {
+			listener.accept(user);
+		}
+	}
+	/**
+	 * Obtiene las sesiones abiertas de los usuarios
+	 * @return SessionManager
+	 */
+	public SessionManager getSessions() {
+		return sessions;
+	}
+	/**
+	 * Agrega un usuario nuevo y espera a que el cambio este en la bitacora
+	 * @param user
+	 * @return false si el nombre de usuario ya existe
+	 * @throws IOException
+	 */
+	public boolean addUser(UserRecord user) throws IOException {
+		String key = UserRecord.key(user.getUserName());
+		CompletableFuture<File> commit;
+		snapshotLock.readLock().lock();
+		try {
+			synchronized(stripe(key)) { //Todos los cambios de este usuario toman la misma franja
+				if(names.containsKey(key)) {
+					return false;
+				}
+				filter.add(key); //Antes que la tabla, para que exists nunca diga que no a un usuario que ya esta
+				records.put(key, user);
+				names.put(key, user.getUserName());
+				commit = log.append(user.toString());
+				changed(user);
+			}
+		}finally {
+			snapshotLock.readLock().unlock();
+		}
+		if(filter.isFull()) {
+			growFilter();
+		}
+		await(commit); //Fuera del bloqueo, para que otros cambios entren al mismo grupo de la bitacora
+		return true;
+	}
+	/**
+	 * Cambia el registro de un usuario. El cambio se calcula y se guarda sin que otro hilo pueda modificar al
+	 * mismo usuario en medio.
+	 * @param userName
+	 * @param change , recibe el registro actual y devuelve el nuevo, o null para no cambiar nada
+	 * @return el registro nuevo, o null si el usuario no existe o no cambio
+	 * @throws IOException
+	 */
+	public UserRecord updateUser(String userName, UnaryOperator<UserRecord> change) throws IOException {
+		String key = UserRecord.key(userName);
+		CompletableFuture<File> commit;
+		UserRecord updated;
+		snapshotLock.readLock().lock();
+		try {
+			synchronized(stripe(key)) {
+				UserRecord current = record(key);
+				if(current == null) {
+					return null;
+				}
+				updated = change.apply(current);
+				if(updated == null) {
+					return null;
+				}
+				records.put(key, updated);
+				commit = log.append(updated.toString()); //En el mismo orden en que cambia el usuario
+				changed(updated);
+			}
+		}finally {
+			snapshotLock.readLock().unlock();
+		}
+		await(commit);
+		return updated;
+	}
+	/**
+	 * Aplica un registro de usuario de la bitacora: lo agrega si no existe o lo reemplaza
+	 * @param user
+	 */
+	private void apply(UserRecord user) {
+		String key = UserRecord.key(user.getUserName());
+		records.put(key, user); //Si ya existe se reemplaza
+		names.put(key, user.getUserName());
+	}
+	/**
+	 * Arma un filtro de Bloom con todos los usuarios, con espacio para el doble
+	 * @return BloomFilter
+	 */
+	private BloomFilter buildFilter() {
+		BloomFilter bigger = new BloomFilter(Math.max(CAPACIDAD_FILTRO, names.size() * 2));
+		for(String key : names.keySet()) {
+			bigger.add(key);
+		}
+		return bigger;
+	}
+	/**
+	 * Reemplaza el filtro lleno por uno mas grande. Se arma sin cambios en curso, asi no le falta ningun usuario;
+	 * mientras tanto las consultas siguen usando el anterior, que tambien los tiene a todos.
+	 */
+	private void growFilter() {
+		snapshotLock.writeLock().lock();
+		try {
+			if(filter.isFull()) {
+				filter = buildFilter();
+			}
+		}finally {
+			snapshotLock.writeLock().unlock();
+		}
+	}
+	/**
+	 * Obtiene los nombres de los usuarios registrados, en orden y separados por "/". Recorre el skip list sin
+	 * bloquearlo: los usuarios que se registren mientras tanto pueden o no aparecer.
+	 * @return string
+	 */
+	public String getUserNames() {
+		StringBuilder list = new StringBuilder();
+		for(String name : names.values()) {
+			list.append(name).append('/');
+		}
+		return list.toString();
+	}
+	/**
+	 * Busca los usuarios cuyo nombre empieza con un prefijo (sin distinguir mayusculas), en orden. Recorre solo
+	 * el rango del skip list que empieza con el prefijo, asi el costo depende de los nombres que se devuelven y no
+	 * de cuantos usuarios hay.
+	 * @param prefix , vacio para todos los usuarios
+	 * @param limit , cantidad maxima de nombres
+	 * @param after , ultimo nombre de la pagina anterior, o null para empezar desde el primero
+	 * @return nombres, como se registraron
+	 */
+	public List<String> findUserNames(String prefix, int limit, String after) {
+		String from = UserRecord.key(prefix);
+		String to = from + Character.MAX_VALUE;
+		boolean inclusive = true;
+		if(after != null && UserRecord.key(after).compareTo(from) >= 0) {
+			from = UserRecord.key(after);
+			inclusive = false;
+		}
+		List<String> page = new ArrayList<String>();
+		if(from.compareTo(to) >= 0) {
+			return page;
+		}
+		for(String name : names.subMap(from, inclusive, to, false).values()) {
+			if(page.size() >= limit) {
+				break;
+			}
+			page.add(name);
+		}
+		return page;
+	}
+	/**
+	 * Guarda un snapshot del registro y vacia la bitacora. Los usuarios que no se han pedido desde que se mapeo el
+	 * snapshot se copian sin convertirlos. Despues se mapea el snapshot nuevo: tiene a todos los usuarios que no
+	 * cambiaron despues, y esos estan en la tabla, asi que se puede cambiar sin bloquear las lecturas.
+	 * @return se completa cuando termina la compactacion
+	 */
+	private CompletableFuture<Void> compact() {
+		CompletableFuture<File> done;
+		snapshotLock.writeLock().lock(); //Ningun cambio puede entrar entre el snapshot y su lugar en la bitacora
+		try {
+			RegistrySnapshot current = snapshot;
+			String[] userNames = new String[names.size()];
+			ByteBuffer[] users = new ByteBuffer[userNames.length];
+			int count = 0;
+			for(Map.Entry<String, String> name : names.entrySet()) {
+				UserRecord user = records.get(name.getKey());
+				userNames[count] = name.getValue();
+				users[count++] = user != null ? ByteBuffer.wrap(user.toString().getBytes(StandardCharsets.UTF_8))
+						: current.record(current.find(name.getKey()));
+			}
+			done = log.compact(userNames, users);
+		}finally {
+			snapshotLock.writeLock().unlock();
+		}
+		return done.thenAccept(this::remap);
+	}
+	/**
+	 * Mapea el snapshot que escribio la compactacion y borra las generaciones anteriores que se puedan. El mapeo
+	 * anterior sigue valido para quien lo este leyendo y se libera cuando nadie lo usa.
+	 * @param compacted , archivo del snapshot nuevo
+	 */
+	private void remap(File compacted) {
+		try {
+			snapshot = RegistrySnapshot.open(compacted);
+		}catch(IOException ex) { //Se sigue con el anterior, que junto a la tabla tiene a todos los usuarios
+			System.out.println("No se pudo mapear el snapshot nuevo de usuarios: " + ex.getMessage());
+			return;
+		}
+		RegistrySnapshot.deleteOlder(file, RegistrySnapshot.latest(file));
+	}
+	/**
+	 * Compacta sin esperar, si la bitacora tiene cambios
+	 */
+	private void compactInBackground() {
+		if(log.size() > 0) {
+			compact();
+		}
+	}
+	/**
+	 * Guarda el registro completo en el archivo de registro y vacia la bitacora, esperando a que termine
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		if(log.size() > 0) {
+			await(compact());
+		}
+	}
+	/**
+	 * Espera a que la bitacora confirme una escritura
+	 * @param commit
+	 * @throws IOException
+	 */
+	private static void await(CompletableFuture<?> commit) throws IOException {
+		try {
+			commit.join();
+		}catch(CompletionException ex) {
+			if(ex.getCause() instanceof IOException) {
+				throw (IOException) ex.getCause();
+			}
+			throw new IOException(ex.getCause());
+		}
+	}
+}